@@ -0,0 +1,17 @@
+package android.graphics;
+
+/**
+ * Stand-in of android.graphics.PointF for the benchmarks. Only what the library uses.
+ */
+public class PointF {
+    public float x;
+    public float y;
+
+    public PointF() {
+    }
+
+    public PointF(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+}
@@ -0,0 +1,26 @@
+package android.os;
+
+/**
+ * Stand-in of android.os.AsyncTask for the benchmarks, which call doInBackground() directly.
+ * There is no main thread, so progress is dropped and the task is never cancelled.
+ */
+public abstract class AsyncTask<Params, Progress, Result> {
+    protected abstract Result doInBackground(Params... params);
+
+    protected void onProgressUpdate(Progress... values) {
+    }
+
+    protected void onPostExecute(Result result) {
+    }
+
+    protected void onCancelled() {
+    }
+
+    @SafeVarargs
+    protected final void publishProgress(Progress... values) {
+    }
+
+    public final boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * Stand-in of android.os.SystemClock for the benchmarks.
+ */
+public final class SystemClock {
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+}
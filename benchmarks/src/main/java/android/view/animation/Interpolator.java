@@ -0,0 +1,8 @@
+package android.view.animation;
+
+/**
+ * Stand-in of android.view.animation.Interpolator for the benchmarks.
+ */
+public interface Interpolator {
+    float getInterpolation(float input);
+}
@@ -0,0 +1,80 @@
+package com.yooiistudios.coreutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baking a keyframe track(ascending times): interpolate() against a getInterpolation() loop.
+ * Scores are per sample.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CubicBezierInterpolatorBatchBenchmark {
+    private static final int SAMPLE_COUNT = 1024;
+
+    @Param({ "exact", "sampled", "immutable" })
+    public String mode;
+
+    private CubicBezierInterpolator mInterpolator;
+    private ImmutableCubicBezierInterpolator mImmutableInterpolator;
+    private float[] mTimes;
+    private float[] mOut;
+
+    @Setup
+    public void setUp() {
+        if ("immutable".equals(mode)) {
+            mImmutableInterpolator = (ImmutableCubicBezierInterpolator)
+                    CubicBezierInterpolatorBenchmark.createInterpolator(mode);
+        } else {
+            mInterpolator = (CubicBezierInterpolator)
+                    CubicBezierInterpolatorBenchmark.createInterpolator(mode);
+        }
+        mTimes = new float[SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            mTimes[i] = (float) i / (SAMPLE_COUNT - 1);
+        }
+        mOut = new float[SAMPLE_COUNT];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public float[] perCall() {
+        if (mInterpolator != null) {
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                mOut[i] = mInterpolator.getInterpolation(mTimes[i]);
+            }
+        } else {
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                mOut[i] = mImmutableInterpolator.getInterpolation(mTimes[i]);
+            }
+        }
+        return mOut;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_COUNT)
+    public float[] batch() {
+        if (mInterpolator != null) {
+            mInterpolator.interpolate(mTimes, mOut, 0, SAMPLE_COUNT);
+        } else {
+            mImmutableInterpolator.interpolate(mTimes, mOut, 0, SAMPLE_COUNT);
+        }
+        return mOut;
+    }
+}
@@ -0,0 +1,78 @@
+package com.yooiistudios.coreutils;
+
+import android.view.animation.Interpolator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getInterpolation() of the material standard curve, per call.
+ * Times are random, so the solver gets no help from the order of the input.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CubicBezierInterpolatorBenchmark {
+    static final int TIME_COUNT = 1024;
+
+    /**
+     * exact: Newton/bisection without table, sampled: DEFAULT_SAMPLE_SIZE table,
+     * immutable: ImmutableCubicBezierInterpolator.obtain()
+     */
+    @Param({ "exact", "sampled", "immutable" })
+    public String mode;
+
+    private Interpolator mInterpolator;
+    private float[] mTimes;
+
+    @Setup
+    public void setUp() {
+        mInterpolator = createInterpolator(mode);
+        mTimes = new float[TIME_COUNT];
+        Random random = new Random(1);
+        for (int i = 0; i < TIME_COUNT; i++) {
+            mTimes[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TIME_COUNT)
+    public float getInterpolation() {
+        float sum = 0;
+        for (float time : mTimes) {
+            sum += mInterpolator.getInterpolation(time);
+        }
+        return sum;
+    }
+
+    static Interpolator createInterpolator(String mode) {
+        switch (mode) {
+            case "exact":
+                return new CubicBezierInterpolator(.4f, 0, .2f, 1);
+            case "sampled":
+                return new CubicBezierInterpolator(.4f, 0, .2f, 1,
+                        CubicBezierInterpolator.DEFAULT_SAMPLE_SIZE,
+                        CubicBezierInterpolator.DEFAULT_EPSILON);
+            case "immutable":
+                return ImmutableCubicBezierInterpolator.obtain(.4f, 0, .2f, 1);
+            default:
+                throw new IllegalArgumentException(mode);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.yooiistudios.coreutils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copy loop of DownloadUrlTask: downloads a body from an in-process HTTP server on the loopback
+ * into a file. The "bytes" counter is the throughput in bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DownloadUrlTaskBenchmark {
+    @Param({ "8192", "65536" })
+    public int bufferSize;
+
+    /**
+     * Loopback HTTP server serving a random body, and the file it is downloaded into.
+     */
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({ "16777216" })
+        public int bodySize;
+
+        private HttpServer mServer;
+        private ExecutorService mExecutor;
+        String mUrl;
+        File mDestFile;
+
+        @Setup
+        public void setUp() throws IOException {
+            final byte[] body = new byte[bodySize];
+            new Random(1).nextBytes(body);
+            mExecutor = Executors.newCachedThreadPool();
+            mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            mServer.setExecutor(mExecutor);
+            mServer.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    try {
+                        exchange.sendResponseHeaders(200, body.length);
+                        OutputStream outputStream = exchange.getResponseBody();
+                        outputStream.write(body);
+                    } finally {
+                        exchange.close();
+                    }
+                }
+            });
+            mServer.start();
+            mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/body";
+            mDestFile = File.createTempFile("download", ".bin");
+        }
+
+        @TearDown
+        public void tearDown() {
+            mServer.stop(0);
+            mExecutor.shutdownNow();
+            mDestFile.delete();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public Object download(Server server, Counters counters) {
+        DownloadUrlTask task = new DownloadUrlTask(server.mUrl, server.mDestFile, null);
+        task.setBufferSize(bufferSize);
+        Object state = task.doInBackground();
+        if (state != DownloadUrlTask.State.SUCCESS) {
+            throw new IllegalStateException("Download failed: " + state);
+        }
+        counters.bytes += server.bodySize;
+        return state;
+    }
+}
@@ -0,0 +1,55 @@
+package com.yooiistudios.coreutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Baseline of DownloadUrlTaskBenchmark: the copy loop DownloadUrlTask had before NIO, i.e.
+ * BufferedInputStream, a byte[4096] allocated per download and an unbuffered FileOutputStream.
+ * Same server and counters, so the "bytes" scores compare directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DownloadUrlTaskLegacyLoopBenchmark {
+    @Benchmark
+    public int download(DownloadUrlTaskBenchmark.Server server,
+                        DownloadUrlTaskBenchmark.Counters counters) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(server.mUrl).openConnection();
+        BufferedInputStream inputStream = null;
+        FileOutputStream outputStream = null;
+        int totalBytesRead = 0;
+        try {
+            inputStream = new BufferedInputStream(conn.getInputStream());
+            outputStream = new FileOutputStream(server.mDestFile, false);
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                totalBytesRead += bytesRead;
+                outputStream.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            CloseableUtils.closeQuietly(inputStream);
+            CloseableUtils.closeQuietly(outputStream);
+        }
+        if (totalBytesRead != server.bodySize) {
+            throw new IllegalStateException("Truncated: " + totalBytesRead);
+        }
+        counters.bytes += totalBytesRead;
+        return totalBytesRead;
+    }
+}
@@ -0,0 +1,130 @@
+package com.yooiistudios.coreutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Array;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashCodeUtils.hash() as called from hashCode() of a model object, and on arrays.
+ *
+ * With -prof gc, gc.alloc.rate.norm of every HashCodeUtils benchmark should stay at 0 B/op.
+ * intArrayReflection is the former reflective walk, which boxes every element.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashCodeUtilsBenchmark {
+    private static final int ARRAY_LENGTH = 256;
+
+    private int mId;
+    private long mTimestamp;
+    private float mScore;
+    private boolean mVisible;
+    private String mTitle;
+    private int[] mIntArray;
+    private long[] mLongArray;
+    private double[] mDoubleArray;
+    private byte[] mByteArray;
+    private Object[] mObjectArray;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        mId = random.nextInt();
+        mTimestamp = random.nextLong();
+        mScore = random.nextFloat();
+        mVisible = random.nextBoolean();
+        mTitle = "title" + random.nextInt();
+        mIntArray = new int[ARRAY_LENGTH];
+        mLongArray = new long[ARRAY_LENGTH];
+        mDoubleArray = new double[ARRAY_LENGTH];
+        mByteArray = new byte[ARRAY_LENGTH];
+        random.nextBytes(mByteArray);
+        mObjectArray = new Object[ARRAY_LENGTH];
+        for (int i = 0; i < ARRAY_LENGTH; i++) {
+            mIntArray[i] = random.nextInt();
+            mLongArray[i] = random.nextLong();
+            mDoubleArray[i] = random.nextDouble();
+            mObjectArray[i] = random.nextInt(4) == 0 ? null : Integer.valueOf(random.nextInt());
+        }
+    }
+
+    /**
+     * hashCode() of a model object with five fields.
+     */
+    @Benchmark
+    public int fields() {
+        int result = HashCodeUtils.SEED;
+        result = HashCodeUtils.hash(result, mId);
+        result = HashCodeUtils.hash(result, mTimestamp);
+        result = HashCodeUtils.hash(result, mScore);
+        result = HashCodeUtils.hash(result, mVisible);
+        result = HashCodeUtils.hash(result, mTitle);
+        return result;
+    }
+
+    @Benchmark
+    public int intArray() {
+        return HashCodeUtils.hash(HashCodeUtils.SEED, mIntArray);
+    }
+
+    @Benchmark
+    public int longArray() {
+        return HashCodeUtils.hash(HashCodeUtils.SEED, mLongArray);
+    }
+
+    @Benchmark
+    public int doubleArray() {
+        return HashCodeUtils.hash(HashCodeUtils.SEED, mDoubleArray);
+    }
+
+    @Benchmark
+    public int byteArray() {
+        return HashCodeUtils.hash(HashCodeUtils.SEED, mByteArray);
+    }
+
+    @Benchmark
+    public int objectArray() {
+        return HashCodeUtils.hash(HashCodeUtils.SEED, mObjectArray);
+    }
+
+    @Benchmark
+    public int intArrayReflection() {
+        return hashWithReflection(HashCodeUtils.SEED, mIntArray);
+    }
+
+    /**
+     * Array walk of HashCodeUtils before it was specialized(without its logging).
+     */
+    private static int hashWithReflection(int seed, Object object) {
+        int result = seed;
+        if (object == null) {
+            result = HashCodeUtils.hash(result, 0);
+        } else if (!object.getClass().isArray()) {
+            result = HashCodeUtils.hash(result, object.hashCode());
+        } else {
+            int length = Array.getLength(object);
+            for (int i = 0; i < length; ++i) {
+                Object item = Array.get(object, i);
+                if (item != object) {
+                    result = hashWithReflection(result, item);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package com.yooiistudios.coreutils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hasher with each Mixer against the static 37 * seed + value chaining, on a
+ * (latitude, longitude, id) key. The Hasher is reused with reset(), so nothing is allocated.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HasherBenchmark {
+    @Param({ "BLOCH", "MURMUR3", "XXHASH" })
+    public HashCodeUtils.Mixer mixer;
+
+    private HashCodeUtils.Hasher mHasher;
+    private double mLatitude;
+    private double mLongitude;
+    private int mId;
+
+    @Setup
+    public void setUp() {
+        mHasher = HashCodeUtils.newHasher(mixer);
+        Random random = new Random(1);
+        mLatitude = 37 + random.nextDouble();
+        mLongitude = 126 + random.nextDouble();
+        mId = random.nextInt();
+    }
+
+    @Benchmark
+    public int hasher() {
+        return mHasher.reset().put(mLatitude).put(mLongitude).put(mId).hash();
+    }
+
+    @Benchmark
+    public long hasher64() {
+        return mHasher.reset().put(mLatitude).put(mLongitude).put(mId).hash64();
+    }
+
+    /**
+     * Does not depend on the mixer parameter.
+     */
+    @Benchmark
+    public int staticChaining() {
+        int result = HashCodeUtils.SEED;
+        result = HashCodeUtils.hash(result, mLatitude);
+        result = HashCodeUtils.hash(result, mLongitude);
+        result = HashCodeUtils.hash(result, mId);
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package com.yooiistudios.coreutils.lab;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the chunked AES-GCM format: streaming encryption and decryption in memory,
+ * and random access to a chunk of a file. The "bytes" counter is plain bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkedCipherBenchmark {
+    private static final int DATA_LENGTH = 8 * 1024 * 1024;
+    private static final int WRITE_LENGTH = 8 * 1024;
+
+    @Param({ "16384", "65536" })
+    public int chunkSize;
+
+    private final AesGcmCipher mCipher = new AesGcmCipher("BenchmarkKey".getBytes());
+    private final Random mRandom = new Random(1);
+    private byte[] mPlain;
+    private byte[] mEncrypted;
+    private byte[] mReadBuffer;
+    private File mFile;
+    private ChunkedCipherFile mChunkedFile;
+    private ByteBuffer mChunkBuffer;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        mPlain = new byte[DATA_LENGTH];
+        mRandom.nextBytes(mPlain);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        write(new ChunkedCipherOutputStream(encrypted, mCipher, chunkSize));
+        mEncrypted = encrypted.toByteArray();
+        mReadBuffer = new byte[WRITE_LENGTH];
+
+        mFile = File.createTempFile("chunked", ".enc");
+        FileOutputStream fileOutputStream = new FileOutputStream(mFile);
+        try {
+            fileOutputStream.write(mEncrypted);
+        } finally {
+            fileOutputStream.close();
+        }
+        mChunkedFile = new ChunkedCipherFile(mFile, mCipher);
+        mChunkBuffer = ByteBuffer.allocate(chunkSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mChunkedFile.close();
+        mFile.delete();
+    }
+
+    /**
+     * Encrypts the data in writes of 8 KB, as DownloadUrlTask does with its copy buffer.
+     */
+    @Benchmark
+    public void encrypt(Counters counters) throws IOException {
+        write(new ChunkedCipherOutputStream(new DiscardOutputStream(), mCipher, chunkSize));
+        counters.bytes += DATA_LENGTH;
+    }
+
+    @Benchmark
+    public long decrypt(Counters counters) throws IOException {
+        ChunkedCipherInputStream inputStream = new ChunkedCipherInputStream(
+                new ByteArrayInputStream(mEncrypted), mCipher);
+        long length = 0;
+        try {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(mReadBuffer)) != -1) {
+                length += bytesRead;
+            }
+        } finally {
+            inputStream.close();
+        }
+        counters.bytes += length;
+        return length;
+    }
+
+    /**
+     * Decrypts a random chunk of the file, without reading the others.
+     */
+    @Benchmark
+    public int readChunk(Counters counters) throws IOException {
+        mChunkBuffer.clear();
+        int length = mChunkedFile.readChunk(
+                mRandom.nextInt((int) mChunkedFile.getChunkCount()), mChunkBuffer);
+        counters.bytes += length;
+        return length;
+    }
+
+    private void write(ChunkedCipherOutputStream outputStream) throws IOException {
+        try {
+            for (int position = 0; position < DATA_LENGTH; position += WRITE_LENGTH) {
+                outputStream.write(mPlain, position, WRITE_LENGTH);
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static class DiscardOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.yooiistudios.coreutils.lab;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The swap/unswap loop of CipherUtils, in place and through bytesToData().
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CipherUtilsBenchmark {
+    private static final String KEY = "BenchmarkKey";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Length of the data in bytes
+     */
+    @Param({ "16", "256", "4096" })
+    public int length;
+
+    private byte[] mKeyBytes;
+    private byte[] mData;
+    private byte[] mEncrypted;
+
+    @Setup
+    public void setUp() {
+        mKeyBytes = KEY.getBytes(UTF_8);
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'a');
+        mData = new String(chars).getBytes(UTF_8);
+        mEncrypted = CipherUtils.swap(mKeyBytes, mData.clone());
+    }
+
+    /**
+     * Swaps and unswaps the same array in place.
+     */
+    @Benchmark
+    public byte[] swapUnswap() {
+        return CipherUtils.unswap(mKeyBytes, CipherUtils.swap(mKeyBytes, mData));
+    }
+
+    /**
+     * Decodes a constant, as generated code does on first access.
+     */
+    @Benchmark
+    public String bytesToData() {
+        return CipherUtils.bytesToData(KEY, mEncrypted);
+    }
+}
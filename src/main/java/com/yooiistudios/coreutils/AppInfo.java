@@ -9,35 +9,98 @@ import android.content.pm.PackageManager;
  *
  * AppInfo
  *  앱의 일반적인 정보를 제공하는 클래스
+ *
+ *  Package information is read with a single PackageManager.getPackageInfo call on first use
+ *  and kept in a Snapshot, so later reads are field reads without IPC.
+ *  It does not change while the process is alive, since an app update restarts the process.
  */
 public class AppInfo {
     public static final int INVALID_VERSION_CODE = -1;
 
-    public static int getVersionCode(Context context) {
-        PackageInfo pInfo;
-        try {
-            if (context.getPackageManager() != null) {
-                pInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
-                return pInfo.versionCode;
+    private volatile static Snapshot snapshot;
+
+    public static final class Snapshot {
+        private final int mVersionCode;
+        private final String mVersionName;
+        private final String mPackageName;
+        private final long mFirstInstallTime;
+        private final long mLastUpdateTime;
+
+        private Snapshot(int versionCode, String versionName, String packageName,
+                         long firstInstallTime, long lastUpdateTime) {
+            mVersionCode = versionCode;
+            mVersionName = versionName;
+            mPackageName = packageName;
+            mFirstInstallTime = firstInstallTime;
+            mLastUpdateTime = lastUpdateTime;
+        }
+
+        public int getVersionCode() {
+            return mVersionCode;
+        }
+
+        public String getVersionName() {
+            return mVersionName;
+        }
+
+        public String getPackageName() {
+            return mPackageName;
+        }
+
+        public long getFirstInstallTime() {
+            return mFirstInstallTime;
+        }
+
+        public long getLastUpdateTime() {
+            return mLastUpdateTime;
+        }
+    }
+
+    /**
+     * Returns the cached package information, reading it on first use.
+     * If it cannot be read, INVALID_VERSION_CODE and "" are returned and nothing is cached.
+     */
+    public static Snapshot getSnapshot(Context context) {
+        if (snapshot == null) {
+            synchronized (AppInfo.class) {
+                if (snapshot == null) {
+                    PackageInfo pInfo = getPackageInfo(context);
+                    if (pInfo == null) {
+                        return new Snapshot(INVALID_VERSION_CODE, "", context.getPackageName(), 0, 0);
+                    }
+                    snapshot = new Snapshot(pInfo.versionCode, pInfo.versionName,
+                            pInfo.packageName, pInfo.firstInstallTime, pInfo.lastUpdateTime);
+                }
             }
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
         }
+        return snapshot;
+    }
+
+    /**
+     * Drops the cached snapshot so that the next read queries PackageManager again.
+     * For tests, which need a fresh snapshot each.
+     */
+    static synchronized void clearSnapshot() {
+        snapshot = null;
+    }
 
-        return INVALID_VERSION_CODE;
+    public static int getVersionCode(Context context) {
+        return getSnapshot(context).getVersionCode();
     }
 
     public static String getVersionName(Context context) {
-        PackageInfo pInfo;
+        return getSnapshot(context).getVersionName();
+    }
+
+    private static PackageInfo getPackageInfo(Context context) {
         try {
             if (context.getPackageManager() != null) {
-                pInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
-                return pInfo.versionName;
+                return context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
             }
         } catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
         }
 
-        return "";
+        return null;
     }
 }
@@ -2,6 +2,7 @@ package com.yooiistudios.coreutils;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Created by Dongheyon Jeong in Randombox_Android from Yooii Studios Co., LTD. on 15. 7. 10.
@@ -17,4 +18,20 @@ public class CloseableUtils {
             } catch (IOException ignored) { }
         }
     }
+
+    /**
+     * Reads inputStream to the end and closes it.
+     * Needed for HttpURLConnection to return the socket to the keep-alive pool.
+     */
+    public static void drainQuietly(InputStream inputStream) {
+        if (inputStream != null) {
+            try {
+                byte[] buffer = new byte[1024];
+                while (inputStream.read(buffer) != -1) { }
+            } catch (IOException ignored) {
+            } finally {
+                closeQuietly(inputStream);
+            }
+        }
+    }
 }
@@ -0,0 +1,190 @@
+package com.yooiistudios.coreutils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.util.ArrayList;
+
+/**
+ * ConnectivityMonitor
+ *  Keeps the type of the active network and notifies changes, instead of querying
+ *  ConnectivityManager on every check.
+ *
+ *  The state comes from a Source. getInstance() returns the app-wide monitor, which registers
+ *  a single CONNECTIVITY_ACTION receiver for the process. The state is kept in a volatile field,
+ *  so reads take no lock and make no IPC. It may lag behind the system until the broadcast
+ *  arrives on the main thread.
+ *  Pass a custom Source to the constructor to drive a monitor without a real network
+ *  (e.g. in tests).
+ *
+ *  Usage:
+ *      ConnectivityMonitor monitor = ConnectivityMonitor.getInstance(context);
+ *      if (monitor.isWifi()) { ... }
+ *      monitor.registerCallback(callback);
+ */
+public class ConnectivityMonitor {
+    public enum NetworkType { NONE, WIFI, CELLULAR, OTHER }
+
+    public interface OnConnectivityChangeCallback {
+        void onConnectivityChanged(NetworkType networkType);
+    }
+
+    /**
+     * Supplies the network state. Must call refresh() of the monitor passed to start()
+     * whenever the state may have changed.
+     */
+    public interface Source {
+        NetworkType getNetworkType();
+        void start(ConnectivityMonitor monitor);
+        void stop();
+    }
+
+    private volatile static ConnectivityMonitor instance;
+
+    private final Source mSource;
+    private final ArrayList<OnConnectivityChangeCallback> mCallbacks = new ArrayList<>();
+    private volatile NetworkType mNetworkType;
+
+    public ConnectivityMonitor(Source source) {
+        mSource = source;
+        mNetworkType = source.getNetworkType();
+        source.start(this);
+    }
+
+    public static ConnectivityMonitor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ConnectivityMonitor.class) {
+                if (instance == null) {
+                    instance = new ConnectivityMonitor(
+                            new BroadcastSource(context.getApplicationContext()));
+                }
+            }
+        }
+        return instance;
+    }
+
+    public NetworkType getNetworkType() {
+        return mNetworkType;
+    }
+
+    public boolean isConnected() {
+        return getNetworkType() != NetworkType.NONE;
+    }
+
+    public boolean isWifi() {
+        return getNetworkType() == NetworkType.WIFI;
+    }
+
+    public boolean isCellular() {
+        return getNetworkType() == NetworkType.CELLULAR;
+    }
+
+    public void registerCallback(OnConnectivityChangeCallback callback) {
+        synchronized (mCallbacks) {
+            mCallbacks.add(callback);
+        }
+    }
+
+    public void unregisterCallback(OnConnectivityChangeCallback callback) {
+        synchronized (mCallbacks) {
+            mCallbacks.remove(callback);
+        }
+    }
+
+    /**
+     * Reads the state from the source and notifies callbacks if it has changed.
+     *
+     * Callbacks are called on the calling thread, outside of any lock(a callback may take locks
+     * of its own, e.g. DownloadQueue). So they see changes in order only if refresh() is always
+     * called from the same thread, as BroadcastSource does on the main thread. A Source calling
+     * it from several threads must order the changes itself.
+     */
+    public void refresh() {
+        NetworkType networkType;
+        // Lock only keeps a change from being lost between writers. Readers do not lock.
+        synchronized (this) {
+            networkType = mSource.getNetworkType();
+            if (networkType == mNetworkType) {
+                return;
+            }
+            mNetworkType = networkType;
+        }
+        dispatchConnectivityChanged(networkType);
+    }
+
+    /**
+     * Stops listening to the source. The last known state is kept.
+     * Must not be called on the instance returned by getInstance().
+     */
+    public void release() {
+        mSource.stop();
+    }
+
+    static NetworkType toNetworkType(NetworkInfo info) {
+        if (info == null || !info.isConnected()) {
+            return NetworkType.NONE;
+        }
+        switch (info.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+                return NetworkType.WIFI;
+            case ConnectivityManager.TYPE_MOBILE:
+                return NetworkType.CELLULAR;
+            default:
+                return NetworkType.OTHER;
+        }
+    }
+
+    private Object[] collectCallbacks() {
+        Object[] callbacks = null;
+        synchronized (mCallbacks) {
+            if (mCallbacks.size() > 0) {
+                callbacks = mCallbacks.toArray();
+            }
+        }
+        return callbacks;
+    }
+
+    private void dispatchConnectivityChanged(NetworkType networkType) {
+        Object[] callbacks = collectCallbacks();
+
+        if (callbacks != null) {
+            for (Object callback : callbacks) {
+                ((OnConnectivityChangeCallback) callback).onConnectivityChanged(networkType);
+            }
+        }
+    }
+
+    private static class BroadcastSource extends BroadcastReceiver implements Source {
+        private final Context mContext;
+        private ConnectivityMonitor mMonitor;
+
+        BroadcastSource(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public NetworkType getNetworkType() {
+            return toNetworkType(ConnectivityUtils.getNetworkInfo(mContext));
+        }
+
+        @Override
+        public void start(ConnectivityMonitor monitor) {
+            mMonitor = monitor;
+            mContext.registerReceiver(this, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+
+        @Override
+        public void stop() {
+            mContext.unregisterReceiver(this);
+        }
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mMonitor.refresh();
+        }
+    }
+}
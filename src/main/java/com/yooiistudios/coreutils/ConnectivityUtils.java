@@ -9,6 +9,10 @@ import android.net.NetworkInfo;
  *
  * ConnectivityUtils
  *  인터넷 연결 상태를 확인하는 유틸 클래스
+ *
+ *  isWifiAvailable() and isNetworkAvailable() answer from the cached state of
+ *  ConnectivityMonitor.getInstance() instead of querying ConnectivityManager on every call.
+ *  getNetworkInfo() still queries ConnectivityManager.
  */
 public class ConnectivityUtils {
     public static NetworkInfo getNetworkInfo(Context context){
@@ -17,12 +21,10 @@ public class ConnectivityUtils {
     }
 
     public static boolean isWifiAvailable(Context context) {
-        NetworkInfo info = ConnectivityUtils.getNetworkInfo(context);
-        return (info != null && info.isConnected() && info.getType() == ConnectivityManager.TYPE_WIFI);
+        return ConnectivityMonitor.getInstance(context).isWifi();
     }
 
     public static boolean isNetworkAvailable(Context context) {
-        NetworkInfo info = ConnectivityUtils.getNetworkInfo(context);
-        return (info != null && info.isConnected());
+        return ConnectivityMonitor.getInstance(context).isConnected();
     }
 }
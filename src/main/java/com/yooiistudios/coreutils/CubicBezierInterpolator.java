@@ -5,8 +5,26 @@ import android.view.animation.Interpolator;
 
 /**
  * Created by Seungyong Yun in Randombox from Yooii Studios Co., LTD. on 15. 4. 26.
+ *
+ * CubicBezierInterpolator
+ *  Interpolator which follows the cubic bezier curve of (0, 0), start, end, (1, 1).
+ *
+ *  Sampled mode:
+ *  Pass sampleSize to the constructor to precompute x values of the curve at evenly spaced
+ *  parameters. getInterpolation then starts from a table lookup, refines it with a single
+ *  Newton step and falls back to bisection inside the looked up segment.
+ *  (Same approach as the spline table of WebKit/Chromium UnitBezier)
+ *      new CubicBezierInterpolator(.4, 0, .2, 1, CubicBezierInterpolator.DEFAULT_SAMPLE_SIZE,
+ *              CubicBezierInterpolator.DEFAULT_EPSILON);
  */
 public class CubicBezierInterpolator implements Interpolator {
+    public static final int DEFAULT_SAMPLE_SIZE = 11;
+    public static final float DEFAULT_EPSILON = 1e-3f;
+
+    private static final int NEWTON_ITERATION_COUNT = 13;
+    private static final int BISECTION_ITERATION_COUNT = 32;
+    private static final int WARM_START_ITERATION_COUNT = 4;
+    private static final float MIN_DERIVATIVE = 1e-6f;
 
     protected PointF start;
     protected PointF end;
@@ -14,41 +32,101 @@ public class CubicBezierInterpolator implements Interpolator {
     protected PointF b = new PointF();
     protected PointF c = new PointF();
 
+    private final float[] mSampleValues;
+    private final float mEpsilon;
+
     public CubicBezierInterpolator(PointF start, PointF end) throws IllegalArgumentException {
+        this(start, end, 0, DEFAULT_EPSILON);
+    }
+
+    /**
+     * @param sampleSize number of precomputed samples. 0 disables the sampled mode.
+     * @param epsilon maximum error of the solved x value allowed in the sampled mode.
+     */
+    public CubicBezierInterpolator(PointF start, PointF end, int sampleSize, float epsilon)
+            throws IllegalArgumentException {
         if (start.x < 0 || start.x > 1) {
             throw new IllegalArgumentException("startX value must be in the range [0, 1]");
         }
         if (end.x < 0 || end.x > 1) {
             throw new IllegalArgumentException("endX value must be in the range [0, 1]");
         }
+        if (sampleSize != 0 && sampleSize < 2) {
+            throw new IllegalArgumentException("sampleSize must be 0 or at least 2");
+        }
+        if (epsilon <= 0) {
+            throw new IllegalArgumentException("epsilon must be positive");
+        }
         this.start = start;
         this.end = end;
+        mEpsilon = epsilon;
+
+        c.x = getCoefficientC(start.x);
+        b.x = getCoefficientB(start.x, end.x);
+        a.x = getCoefficientA(start.x, end.x);
+        c.y = getCoefficientC(start.y);
+        b.y = getCoefficientB(start.y, end.y);
+        a.y = getCoefficientA(start.y, end.y);
+
+        mSampleValues = sampleSize > 0 ? createSampleValues(a.x, b.x, c.x, sampleSize) : null;
     }
 
     public CubicBezierInterpolator(float startX, float startY, float endX, float endY) {
         this(new PointF(startX, startY), new PointF(endX, endY));
     }
 
+    public CubicBezierInterpolator(float startX, float startY, float endX, float endY,
+                                   int sampleSize, float epsilon) {
+        this(new PointF(startX, startY), new PointF(endX, endY), sampleSize, epsilon);
+    }
+
     public CubicBezierInterpolator(double startX, double startY, double endX, double endY) {
         this((float) startX, (float) startY, (float) endX, (float) endY);
     }
 
+    public CubicBezierInterpolator(double startX, double startY, double endX, double endY,
+                                   int sampleSize, float epsilon) {
+        this((float) startX, (float) startY, (float) endX, (float) endY, sampleSize, epsilon);
+    }
+
     @Override
     public float getInterpolation(float time) {
+        if (mSampleValues != null) {
+            return getBezierCoordinateY(
+                    solveCurveX(a.x, b.x, c.x, mSampleValues, mEpsilon, time));
+        }
         return getBezierCoordinateY(getXForTime(time));
     }
 
+    /**
+     * Evaluates times[from, from + len) into out[from, from + len) without allocation.
+     * While times are in ascending order, each solve is warm-started from the previous solution.
+     */
+    public void interpolate(float[] times, float[] out, int from, int len) {
+        checkRange(times, out, from, len);
+        float previousTime = Float.NaN;
+        float x = 0;
+        for (int i = from; i < from + len; i++) {
+            float time = times[i];
+            float guess = time >= previousTime ? x : time;
+            x = solveCurveX(a.x, b.x, c.x, mSampleValues, mEpsilon, time, guess);
+            out[i] = getBezierCoordinateY(x);
+            previousTime = time;
+        }
+    }
+
+    public boolean isSampled() {
+        return mSampleValues != null;
+    }
+
     protected float getBezierCoordinateY(float time) {
-        c.y = 3 * start.y;
-        b.y = 3 * (end.y - start.y) - c.y;
-        a.y = 1 - c.y - b.y;
-        return time * (c.y + time * (b.y + time * a.y));
+        return sampleCurve(a.y, b.y, c.y, time);
     }
 
     protected float getXForTime(float time) {
         float x = time;
         float z;
-        for (int i = 1; i < 14; i++) {
+        for (int i = 0; i < NEWTON_ITERATION_COUNT; i++) {
             z = getBezierCoordinateX(x) - time;
             if (Math.abs(z) < 1e-3) {
                 break;
@@ -59,13 +137,156 @@ public class CubicBezierInterpolator implements Interpolator {
     }
 
     private float getXDerivate(float t) {
-        return c.x + t * (2 * b.x + 3 * a.x * t);
+        return sampleCurveDerivative(a.x, b.x, c.x, t);
     }
 
     private float getBezierCoordinateX(float time) {
-        c.x = 3 * start.x;
-        b.x = 3 * (end.x - start.x) - c.x;
-        a.x = 1 - c.x - b.x;
-        return time * (c.x + time * (b.x + time * a.x));
+        return sampleCurve(a.x, b.x, c.x, time);
+    }
+
+    static float getCoefficientC(float p1) {
+        return 3 * p1;
+    }
+
+    static float getCoefficientB(float p1, float p2) {
+        return 3 * (p2 - p1) - getCoefficientC(p1);
+    }
+
+    static float getCoefficientA(float p1, float p2) {
+        return 1 - getCoefficientC(p1) - getCoefficientB(p1, p2);
+    }
+
+    static float sampleCurve(float a, float b, float c, float t) {
+        return t * (c + t * (b + t * a));
+    }
+
+    static float sampleCurveDerivative(float a, float b, float c, float t) {
+        return c + t * (2 * b + 3 * a * t);
+    }
+
+    /**
+     * Samples x values of the curve at sampleSize evenly spaced parameters in [0, 1].
+     */
+    static float[] createSampleValues(float a, float b, float c, int sampleSize) {
+        float[] sampleValues = new float[sampleSize];
+        float delta = 1f / (sampleSize - 1);
+        for (int i = 0; i < sampleSize; i++) {
+            sampleValues[i] = sampleCurve(a, b, c, i * delta);
+        }
+        return sampleValues;
+    }
+
+    /**
+     * Finds the curve parameter whose x value is x by looking up sampleValues, refining the
+     * guess with one Newton step and falling back to bisection inside the sampled segment.
+     */
+    static float solveCurveX(float a, float b, float c, float[] sampleValues, float epsilon,
+                             float x) {
+        if (x <= 0) {
+            return 0;
+        } else if (x >= 1) {
+            return 1;
+        }
+
+        int lastIndex = sampleValues.length - 1;
+        float delta = 1f / lastIndex;
+
+        // Binary search for the segment [sampleValues[low], sampleValues[low + 1]] containing x
+        int low = 0;
+        int high = lastIndex;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (sampleValues[mid] <= x) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        float t0 = low * delta;
+        float t1 = high * delta;
+
+        float segmentWidth = sampleValues[high] - sampleValues[low];
+        float t = segmentWidth > 0
+                ? t0 + delta * (x - sampleValues[low]) / segmentWidth
+                : t0;
+
+        float error = sampleCurve(a, b, c, t) - x;
+        if (Math.abs(error) < epsilon) {
+            return t;
+        }
+
+        float derivative = sampleCurveDerivative(a, b, c, t);
+        if (Math.abs(derivative) >= MIN_DERIVATIVE) {
+            float refined = t - error / derivative;
+            if (refined >= t0 && refined <= t1) {
+                t = refined;
+                error = sampleCurve(a, b, c, t) - x;
+                if (Math.abs(error) < epsilon) {
+                    return t;
+                }
+            }
+        }
+
+        return bisectCurveX(a, b, c, epsilon, x, t0, t1);
+    }
+
+    /**
+     * Same as {@link #solveCurveX(float, float, float, float[], float, float)} but starts
+     * Newton iterations from guess, falling back to the table(or bisection over [0, 1]
+     * if sampleValues is null) when they do not converge.
+     */
+    static float solveCurveX(float a, float b, float c, float[] sampleValues, float epsilon,
+                             float x, float guess) {
+        if (x <= 0) {
+            return 0;
+        } else if (x >= 1) {
+            return 1;
+        }
+
+        float t = guess;
+        for (int i = 0; i < WARM_START_ITERATION_COUNT; i++) {
+            float error = sampleCurve(a, b, c, t) - x;
+            if (Math.abs(error) < epsilon) {
+                return t;
+            }
+            float derivative = sampleCurveDerivative(a, b, c, t);
+            if (Math.abs(derivative) < MIN_DERIVATIVE) {
+                break;
+            }
+            t -= error / derivative;
+            if (t < 0 || t > 1) {
+                break;
+            }
+        }
+
+        if (sampleValues != null) {
+            return solveCurveX(a, b, c, sampleValues, epsilon, x);
+        }
+        return bisectCurveX(a, b, c, epsilon, x, 0, 1);
+    }
+
+    static void checkRange(float[] times, float[] out, int from, int len) {
+        if (from < 0 || len < 0 || from + len > times.length || from + len > out.length) {
+            throw new ArrayIndexOutOfBoundsException("from: " + from + ", len: " + len
+                    + ", times.length: " + times.length + ", out.length: " + out.length);
+        }
+    }
+
+    private static float bisectCurveX(float a, float b, float c, float epsilon, float x,
+                                      float t0, float t1) {
+        float t = (t0 + t1) * .5f;
+        for (int i = 0; i < BISECTION_ITERATION_COUNT; i++) {
+            float error = sampleCurve(a, b, c, t) - x;
+            if (Math.abs(error) < epsilon) {
+                break;
+            }
+            if (error < 0) {
+                t0 = t;
+            } else {
+                t1 = t;
+            }
+            t = (t0 + t1) * .5f;
+        }
+        return t;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package com.yooiistudios.coreutils;
+
+/**
+ * DownloadAttempt
+ *  Statistics of a single request made by DownloadUrlTask, reported through
+ *  DownloadUrlTask.OnDownloadAttemptListener.
+ */
+public class DownloadAttempt {
+    private final int mAttempt;
+    private final long mStartTimeMillis;
+    private long mLatencyMillis = -1;
+    private long mDurationMillis = -1;
+    private int mResponseCode = -1;
+    private long mOffset = 0;
+    private long mBytesReceived = 0;
+    private Throwable mCause;
+    private boolean mWillRetry = false;
+
+    DownloadAttempt(int attempt, long startTimeMillis) {
+        mAttempt = attempt;
+        mStartTimeMillis = startTimeMillis;
+    }
+
+    void onResponse(int responseCode, long timeMillis) {
+        mResponseCode = responseCode;
+        mLatencyMillis = timeMillis - mStartTimeMillis;
+    }
+
+    void onFinish(long timeMillis) {
+        mDurationMillis = timeMillis - mStartTimeMillis;
+    }
+
+    void setOffset(long offset) {
+        mOffset = offset;
+    }
+
+    void addBytesReceived(long bytes) {
+        mBytesReceived += bytes;
+    }
+
+    void setCause(Throwable cause) {
+        mCause = cause;
+    }
+
+    void setWillRetry(boolean willRetry) {
+        mWillRetry = willRetry;
+    }
+
+    /**
+     * @return 1-based attempt number
+     */
+    public int getAttempt() {
+        return mAttempt;
+    }
+
+    /**
+     * @return time to the response headers, -1 if no response has been received.
+     */
+    public long getLatencyMillis() {
+        return mLatencyMillis;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    /**
+     * @return HTTP status code, -1 if no response has been received.
+     */
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    /**
+     * @return byte offset the attempt resumed from
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /**
+     * @return exception which failed the attempt, null if it did not fail with an exception.
+     */
+    public Throwable getCause() {
+        return mCause;
+    }
+
+    public boolean willRetry() {
+        return mWillRetry;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadAttempt{attempt=" + mAttempt + ", responseCode=" + mResponseCode
+                + ", latency=" + mLatencyMillis + "ms, duration=" + mDurationMillis
+                + "ms, offset=" + mOffset + ", bytes=" + mBytesReceived + ", cause=" + mCause
+                + ", willRetry=" + mWillRetry + "}";
+    }
+}
@@ -0,0 +1,145 @@
+package com.yooiistudios.coreutils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Properties;
+
+/**
+ * DownloadMetadata
+ *  HTTP validators(ETag / Last-Modified) of a downloaded file,
+ *  persisted next to the file as "[file name].meta"
+ *
+ *  The length is recorded only once the file has been completely downloaded. Until then the
+ *  validators may be used to resume the file, but not to revalidate it.
+ */
+class DownloadMetadata {
+    private static final String SUFFIX = ".meta";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "last_modified";
+    private static final String KEY_LENGTH = "length";
+
+    private final String mETag;
+    private final String mLastModified;
+    private final long mLength;
+
+    DownloadMetadata(String eTag, String lastModified) {
+        this(eTag, lastModified, -1);
+    }
+
+    private DownloadMetadata(String eTag, String lastModified, long length) {
+        mETag = eTag;
+        mLastModified = lastModified;
+        mLength = length;
+    }
+
+    static DownloadMetadata from(HttpURLConnection conn) {
+        return new DownloadMetadata(conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+    }
+
+    /**
+     * @param length length of the completely downloaded file
+     */
+    DownloadMetadata complete(long length) {
+        return new DownloadMetadata(mETag, mLastModified, length);
+    }
+
+    static DownloadMetadata read(File file) {
+        File metaFile = getMetaFile(file);
+        if (!metaFile.exists()) {
+            return null;
+        }
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(metaFile);
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            return new DownloadMetadata(properties.getProperty(KEY_ETAG),
+                    properties.getProperty(KEY_LAST_MODIFIED),
+                    Long.parseLong(properties.getProperty(KEY_LENGTH, "-1")));
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        } finally {
+            CloseableUtils.closeQuietly(inputStream);
+        }
+    }
+
+    static void delete(File file) {
+        File metaFile = getMetaFile(file);
+        if (metaFile.exists()) {
+            metaFile.delete();
+        }
+    }
+
+    /**
+     * Moves the metadata of from to to, if any. Metadata of to is removed otherwise.
+     */
+    static void move(File from, File to) {
+        File metaFile = getMetaFile(from);
+        if (!metaFile.exists() || !metaFile.renameTo(getMetaFile(to))) {
+            delete(to);
+        }
+    }
+
+    void write(File file) throws IOException {
+        if (isEmpty()) {
+            delete(file);
+            return;
+        }
+        Properties properties = new Properties();
+        if (mETag != null) {
+            properties.setProperty(KEY_ETAG, mETag);
+        }
+        if (mLastModified != null) {
+            properties.setProperty(KEY_LAST_MODIFIED, mLastModified);
+        }
+        if (mLength >= 0) {
+            properties.setProperty(KEY_LENGTH, String.valueOf(mLength));
+        }
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(getMetaFile(file));
+            properties.store(outputStream, null);
+        } finally {
+            CloseableUtils.closeQuietly(outputStream);
+        }
+    }
+
+    String getETag() {
+        return mETag;
+    }
+
+    String getLastModified() {
+        return mLastModified;
+    }
+
+    boolean isEmpty() {
+        return mETag == null && mLastModified == null;
+    }
+
+    /**
+     * @return true if file has been completely downloaded and has not been changed since
+     */
+    boolean isComplete(File file) {
+        return mLength >= 0 && file.length() == mLength;
+    }
+
+    /**
+     * Validator usable in If-Range header. Weak ETags are not allowed there,
+     * so Last-Modified is used instead in that case.
+     */
+    String getRangeValidator() {
+        if (mETag != null && !mETag.startsWith("W/")) {
+            return mETag;
+        }
+        return mLastModified;
+    }
+
+    private static File getMetaFile(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+}
@@ -0,0 +1,606 @@
+package com.yooiistudios.coreutils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * DownloadQueue
+ *  Schedules DownloadUrlTasks with bounded concurrency.
+ *
+ *  - Requests with higher priority start first(FIFO among the same priority).
+ *  - At most maxConcurrentCount downloads run at once, at most maxPerHostCount per host.
+ *  - Enqueuing a request with the same url and destination as a queued/running one
+ *    attaches the listener to the existing download instead of starting a new one.
+ *  - cancel(tag) cancels every queued/running request with the tag.
+ *  - OnQueueProgressListener receives the sum of progress of every download since the
+ *    queue was last idle, including paused ones.
+ *  - shutdown() cancels everything and stops the queue's threads once they are done.
+ *
+ *  Network awareness:
+ *  With setConnectivityMonitor(), the queue follows the active network.
+ *  - While offline nothing starts, and running downloads are paused(put back in the queue).
+ *  - On cellular, WIFI_ONLY requests are deferred(paused if running) until wifi returns and
+ *    THROTTLE_ON_CELLULAR requests are limited to setCellularMaxBytesPerSecond().
+ *  A paused request continues from where it stopped if it is resumable, starts over otherwise.
+ *  Listeners are not notified of pauses.
+ *
+ *  Downloads run on the queue's own background-priority threads.
+ *  Listeners are called on the main thread, the same as DownloadUrlTask, and never while the
+ *  queue is locked. Cancellation callbacks are posted, so they arrive after cancel() returns.
+ *
+ *  Usage:
+ *      DownloadQueue queue = new DownloadQueue(4, 2);
+ *      DownloadQueue.Request request = new DownloadQueue.Request(url, destFile);
+ *      request.setPriority(10);
+ *      request.setTag(TAG_ASSET_PACK);
+ *      queue.enqueue(request, listener);
+ */
+public class DownloadQueue implements ConnectivityMonitor.OnConnectivityChangeCallback {
+    public enum NetworkPolicy { ANY, THROTTLE_ON_CELLULAR, WIFI_ONLY }
+
+    public interface OnQueueProgressListener {
+        void onQueueProgressUpdate(long current, long total);
+        void onQueueIdle();
+    }
+
+    public static class Request {
+        private final String mUrl;
+        private final File mDestFile;
+        private int mPriority = 0;
+        private Object mTag;
+        private boolean mResumable = false;
+        private int mSegmentCount = 1;
+        private boolean mConditional = false;
+        private RetryPolicy mRetryPolicy;
+        private NetworkPolicy mNetworkPolicy = NetworkPolicy.ANY;
+
+        public Request(String url, File destFile) {
+            mUrl = url;
+            mDestFile = destFile;
+        }
+
+        public void setPriority(int priority) {
+            mPriority = priority;
+        }
+
+        public void setTag(Object tag) {
+            mTag = tag;
+        }
+
+        public void setResumable(boolean resumable) {
+            mResumable = resumable;
+        }
+
+        public void setSegmentCount(int segmentCount) {
+            mSegmentCount = segmentCount;
+        }
+
+        public void setConditional(boolean conditional) {
+            mConditional = conditional;
+        }
+
+        public void setRetryPolicy(RetryPolicy retryPolicy) {
+            mRetryPolicy = retryPolicy;
+        }
+
+        /**
+         * Takes effect only if the queue has a ConnectivityMonitor.
+         */
+        public void setNetworkPolicy(NetworkPolicy networkPolicy) {
+            mNetworkPolicy = networkPolicy;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        public File getDestFile() {
+            return mDestFile;
+        }
+
+        public Object getTag() {
+            return mTag;
+        }
+
+        private String getKey() {
+            return mUrl + "\n" + mDestFile.getAbsolutePath();
+        }
+
+        private String getHost() {
+            try {
+                return new URL(mUrl).getHost();
+            } catch (MalformedURLException e) {
+                return mUrl;
+            }
+        }
+    }
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            if (lhs.mRequest.mPriority != rhs.mRequest.mPriority) {
+                return lhs.mRequest.mPriority > rhs.mRequest.mPriority ? -1 : 1;
+            }
+            return lhs.mSequence < rhs.mSequence ? -1 : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+        }
+    };
+
+    private final int mMaxConcurrentCount;
+    private final int mMaxPerHostCount;
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final PriorityQueue<Entry> mPendingEntries = new PriorityQueue<>(11, ENTRY_COMPARATOR);
+    private final List<Entry> mRunningEntries = new ArrayList<>();
+    private final Map<String, Entry> mEntriesByKey = new HashMap<>();
+    private final Map<String, Integer> mRunningCountByHost = new HashMap<>();
+    private final List<Entry> mFinishedEntries = new ArrayList<>();
+    private long mSequence = 0;
+    private boolean mShutdown = false;
+
+    private OnQueueProgressListener mOnQueueProgressListener;
+    private ConnectivityMonitor mConnectivityMonitor;
+    private ConnectivityMonitor.NetworkType mNetworkType = ConnectivityMonitor.NetworkType.OTHER;
+    private long mCellularMaxBytesPerSecond = 0;
+
+    public DownloadQueue(int maxConcurrentCount, int maxPerHostCount) {
+        if (maxConcurrentCount < 1 || maxPerHostCount < 1) {
+            throw new IllegalArgumentException("Concurrency limits must be at least 1");
+        }
+        mMaxConcurrentCount = maxConcurrentCount;
+        mMaxPerHostCount = maxPerHostCount;
+        mExecutor = Executors.newFixedThreadPool(maxConcurrentCount, new BackgroundThreadFactory());
+    }
+
+    public synchronized void setOnQueueProgressListener(OnQueueProgressListener listener) {
+        mOnQueueProgressListener = listener;
+    }
+
+    /**
+     * Makes the queue follow connectivity changes reported by the monitor. null detaches it.
+     */
+    public synchronized void setConnectivityMonitor(ConnectivityMonitor monitor) {
+        if (mConnectivityMonitor != null) {
+            mConnectivityMonitor.unregisterCallback(this);
+        }
+        mConnectivityMonitor = monitor;
+        if (monitor != null) {
+            monitor.registerCallback(this);
+            onConnectivityChanged(monitor.getNetworkType());
+        } else {
+            onConnectivityChanged(ConnectivityMonitor.NetworkType.OTHER);
+        }
+    }
+
+    /**
+     * @param maxBytesPerSecond rate limit of THROTTLE_ON_CELLULAR requests on cellular.
+     *                          0 removes the limit.
+     */
+    public synchronized void setCellularMaxBytesPerSecond(long maxBytesPerSecond) {
+        mCellularMaxBytesPerSecond = maxBytesPerSecond;
+        for (Entry entry : mRunningEntries) {
+            entry.applyBandwidthLimit();
+        }
+    }
+
+    @Override
+    public synchronized void onConnectivityChanged(ConnectivityMonitor.NetworkType networkType) {
+        mNetworkType = networkType;
+        for (Entry entry : mRunningEntries) {
+            if (isAllowed(entry.mRequest)) {
+                entry.applyBandwidthLimit();
+            } else {
+                entry.pause();
+            }
+        }
+        scheduleNext();
+    }
+
+    /**
+     * @return true if a new download has been queued, false if the listener has been attached
+     * to an identical download which is already queued or running.
+     */
+    public synchronized boolean enqueue(Request request, DownloadUrlTask.OnDownloadListener listener) {
+        if (mShutdown) {
+            throw new IllegalStateException("DownloadQueue has been shut down");
+        }
+        Entry entry = mEntriesByKey.get(request.getKey());
+        if (entry != null) {
+            if (listener != null) {
+                entry.mListeners.add(listener);
+            }
+            if (entry.mRequest.mPriority < request.mPriority && mPendingEntries.remove(entry)) {
+                entry.mRequest.mPriority = request.mPriority;
+                mPendingEntries.add(entry);
+            }
+            return false;
+        }
+
+        entry = new Entry(request, mSequence++);
+        if (listener != null) {
+            entry.mListeners.add(listener);
+        }
+        mEntriesByKey.put(request.getKey(), entry);
+        mPendingEntries.add(entry);
+        scheduleNext();
+        return true;
+    }
+
+    /**
+     * Cancels every queued or running download whose tag equals to the tag.
+     */
+    public void cancel(Object tag) {
+        final List<Entry> cancelledEntries = new ArrayList<>();
+        final boolean idle;
+        synchronized (this) {
+            Iterator<Entry> iterator = mPendingEntries.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (isTagEqual(tag, entry.mRequest.mTag)) {
+                    iterator.remove();
+                    mEntriesByKey.remove(entry.mRequest.getKey());
+                    cancelledEntries.add(entry);
+                }
+            }
+            for (Entry entry : mRunningEntries) {
+                if (isTagEqual(tag, entry.mRequest.mTag)) {
+                    entry.cancel();
+                }
+            }
+            idle = checkIdle();
+        }
+        postCancelled(cancelledEntries, idle);
+    }
+
+    public void cancelAll() {
+        List<Entry> cancelledEntries;
+        boolean idle;
+        synchronized (this) {
+            cancelledEntries = cancelAllLocked();
+            idle = checkIdle();
+        }
+        postCancelled(cancelledEntries, idle);
+    }
+
+    /**
+     * Cancels everything, detaches the ConnectivityMonitor and lets the threads of the queue
+     * end once the running downloads have stopped. Nothing can be enqueued afterwards.
+     */
+    public void shutdown() {
+        List<Entry> cancelledEntries;
+        boolean idle;
+        synchronized (this) {
+            if (mShutdown) {
+                return;
+            }
+            mShutdown = true;
+            cancelledEntries = cancelAllLocked();
+            setConnectivityMonitor(null);
+            idle = checkIdle();
+        }
+        mExecutor.shutdown();
+        postCancelled(cancelledEntries, idle);
+    }
+
+    public synchronized int getPendingCount() {
+        return mPendingEntries.size();
+    }
+
+    public synchronized int getRunningCount() {
+        return mRunningEntries.size();
+    }
+
+    /**
+     * Posts a runnable to the main thread. Overridden by tests, which have no Looper.
+     */
+    void postToMainThread(Runnable runnable) {
+        mMainHandler.post(runnable);
+    }
+
+    /**
+     * Creates the task of a request about to start. Overridden by tests to run without a network.
+     */
+    DownloadUrlTask createTask(Request request, DownloadUrlTask.OnDownloadListener listener) {
+        return new DownloadUrlTask(request.mUrl, request.mDestFile, listener);
+    }
+
+    private static boolean isTagEqual(Object tag, Object otherTag) {
+        return tag == null ? otherTag == null : tag.equals(otherTag);
+    }
+
+    private boolean isAllowed(Request request) {
+        switch (mNetworkType) {
+            case NONE:
+                return false;
+            case CELLULAR:
+                return request.mNetworkPolicy != NetworkPolicy.WIFI_ONLY;
+            default:
+                return true;
+        }
+    }
+
+    private long getMaxBytesPerSecond(Request request) {
+        if (mNetworkType == ConnectivityMonitor.NetworkType.CELLULAR
+                && request.mNetworkPolicy == NetworkPolicy.THROTTLE_ON_CELLULAR) {
+            return mCellularMaxBytesPerSecond;
+        }
+        return 0;
+    }
+
+    private void scheduleNext() {
+        if (mRunningEntries.size() >= mMaxConcurrentCount || mPendingEntries.isEmpty()) {
+            return;
+        }
+        // Skip entries whose host is saturated or which the network does not allow,
+        // keeping them in the queue in priority order.
+        List<Entry> skippedEntries = new ArrayList<>();
+        Entry entry;
+        while (mRunningEntries.size() < mMaxConcurrentCount
+                && (entry = mPendingEntries.poll()) != null) {
+            String host = entry.mRequest.getHost();
+            int runningCount = getRunningCount(host);
+            if (runningCount >= mMaxPerHostCount || !isAllowed(entry.mRequest)) {
+                skippedEntries.add(entry);
+                continue;
+            }
+            mRunningCountByHost.put(host, runningCount + 1);
+            mRunningEntries.add(entry);
+            entry.start();
+        }
+        mPendingEntries.addAll(skippedEntries);
+    }
+
+    private int getRunningCount(String host) {
+        Integer count = mRunningCountByHost.get(host);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * @return pending entries, which have been removed from the queue and must be reported as
+     * cancelled
+     */
+    private List<Entry> cancelAllLocked() {
+        List<Entry> cancelledEntries = new ArrayList<>(mPendingEntries);
+        mPendingEntries.clear();
+        for (Entry entry : cancelledEntries) {
+            mEntriesByKey.remove(entry.mRequest.getKey());
+        }
+        for (Entry entry : mRunningEntries) {
+            entry.cancel();
+        }
+        return cancelledEntries;
+    }
+
+    private void postCancelled(final List<Entry> cancelledEntries, final boolean idle) {
+        if (cancelledEntries.isEmpty() && !idle) {
+            return;
+        }
+        postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (Entry entry : cancelledEntries) {
+                    entry.dispatchCancel();
+                }
+                if (idle) {
+                    dispatchIdle();
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread.
+     */
+    private void onEntryFinished(Entry entry) {
+        boolean idle;
+        synchronized (this) {
+            mEntriesByKey.remove(entry.mRequest.getKey());
+            mFinishedEntries.add(entry);
+            removeRunningEntry(entry);
+
+            scheduleNext();
+            idle = checkIdle();
+        }
+        if (idle) {
+            dispatchIdle();
+        }
+    }
+
+    /**
+     * Puts the paused entry back in the queue. It keeps its place among the same priority.
+     */
+    private synchronized void onEntryPaused(Entry entry) {
+        removeRunningEntry(entry);
+        mPendingEntries.add(entry);
+        scheduleNext();
+    }
+
+    private void removeRunningEntry(Entry entry) {
+        mRunningEntries.remove(entry);
+
+        String host = entry.mRequest.getHost();
+        int runningCount = getRunningCount(host) - 1;
+        if (runningCount > 0) {
+            mRunningCountByHost.put(host, runningCount);
+        } else {
+            mRunningCountByHost.remove(host);
+        }
+    }
+
+    /**
+     * Called on the main thread.
+     */
+    private void notifyProgress() {
+        OnQueueProgressListener listener;
+        long current = 0;
+        long total = 0;
+        synchronized (this) {
+            listener = mOnQueueProgressListener;
+            if (listener == null) {
+                return;
+            }
+            // Paused entries wait in the queue with what they have downloaded so far
+            for (Entry entry : mPendingEntries) {
+                current += entry.mCurrent;
+                total += entry.mTotal;
+            }
+            for (Entry entry : mRunningEntries) {
+                current += entry.mCurrent;
+                total += entry.mTotal;
+            }
+            for (Entry entry : mFinishedEntries) {
+                current += entry.mCurrent;
+                total += entry.mTotal;
+            }
+        }
+        listener.onQueueProgressUpdate(current, total);
+    }
+
+    /**
+     * Starts a new progress period if nothing is left. The caller dispatches onQueueIdle()
+     * after releasing the lock.
+     *
+     * @return true if the queue has become idle
+     */
+    private boolean checkIdle() {
+        if (!mRunningEntries.isEmpty() || !mPendingEntries.isEmpty()) {
+            return false;
+        }
+        mFinishedEntries.clear();
+        return true;
+    }
+
+    private void dispatchIdle() {
+        OnQueueProgressListener listener;
+        synchronized (this) {
+            listener = mOnQueueProgressListener;
+        }
+        if (listener != null) {
+            listener.onQueueIdle();
+        }
+    }
+
+    private class Entry implements DownloadUrlTask.OnDownloadListener {
+        private final Request mRequest;
+        private final long mSequence;
+        private final List<DownloadUrlTask.OnDownloadListener> mListeners = new ArrayList<>();
+        private DownloadUrlTask mTask;
+        private boolean mPausing = false;
+        private int mCurrent;
+        private int mTotal;
+
+        Entry(Request request, long sequence) {
+            mRequest = request;
+            mSequence = sequence;
+        }
+
+        void start() {
+            mTask = createTask(mRequest, this);
+            mTask.setResumable(mRequest.mResumable);
+            mTask.setSegmentCount(mRequest.mSegmentCount);
+            mTask.setConditional(mRequest.mConditional);
+            if (mRequest.mRetryPolicy != null) {
+                mTask.setRetryPolicy(mRequest.mRetryPolicy);
+            }
+            mPausing = false;
+            applyBandwidthLimit();
+            mTask.executeOnExecutor(mExecutor);
+        }
+
+        void applyBandwidthLimit() {
+            mTask.setMaxBytesPerSecond(getMaxBytesPerSecond(mRequest));
+        }
+
+        void pause() {
+            mPausing = true;
+            mTask.cancel(true);
+        }
+
+        void cancel() {
+            mPausing = false;
+            mTask.cancel(true);
+        }
+
+        private DownloadUrlTask.OnDownloadListener[] collectListeners() {
+            synchronized (DownloadQueue.this) {
+                return mListeners.toArray(new DownloadUrlTask.OnDownloadListener[mListeners.size()]);
+            }
+        }
+
+        void dispatchCancel() {
+            for (DownloadUrlTask.OnDownloadListener listener : collectListeners()) {
+                listener.onDownloadCancel();
+            }
+        }
+
+        @Override
+        public void onDownloadProgressUpdate(int current, int total) {
+            mCurrent = current;
+            mTotal = Math.max(total, 0);
+            for (DownloadUrlTask.OnDownloadListener listener : collectListeners()) {
+                listener.onDownloadProgressUpdate(current, total);
+            }
+            notifyProgress();
+        }
+
+        @Override
+        public void onDownloadSuccess() {
+            for (DownloadUrlTask.OnDownloadListener listener : collectListeners()) {
+                listener.onDownloadSuccess();
+            }
+            onEntryFinished(this);
+        }
+
+        @Override
+        public void onDownloadFail() {
+            for (DownloadUrlTask.OnDownloadListener listener : collectListeners()) {
+                listener.onDownloadFail();
+            }
+            onEntryFinished(this);
+        }
+
+        @Override
+        public void onDownloadCancel() {
+            boolean pausing;
+            synchronized (DownloadQueue.this) {
+                pausing = mPausing;
+            }
+            if (pausing) {
+                onEntryPaused(this);
+                return;
+            }
+            dispatchCancel();
+            onEntryFinished(this);
+        }
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private int mCount = 0;
+
+        @Override
+        public synchronized Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "DownloadQueue #" + ++mCount);
+        }
+    }
+}
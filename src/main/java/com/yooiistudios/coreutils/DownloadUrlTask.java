@@ -1,19 +1,98 @@
 package com.yooiistudios.coreutils;
 
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.io.BufferedInputStream;
+import com.yooiistudios.coreutils.lab.AesGcmCipher;
+import com.yooiistudios.coreutils.lab.ChunkedCipherOutputStream;
+
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Dongheyon Jeong in DownloadLargeFileTest from Yooii Studios Co., LTD. on 15. 7. 10.
  *
  * DownloadUrlTask
  *  url 을 File 로 다운로드
+ *
+ *  Resume:
+ *  setResumable(true) keeps the partially downloaded file and continues it with
+ *  "Range: bytes=N-" + "If-Range" request. Appends on 206, starts over on 200.
+ *
+ *  Segmented download:
+ *  setSegmentCount(K) splits Content-Length into K byte ranges which are fetched concurrently
+ *  and written at their own offsets of a preallocated file. Each segment is retried from where
+ *  it stopped, and the first segment to fail for good stops the others.
+ *  Falls back to the single stream download if the server does not support ranges.
+ *
+ *  Progress throttling:
+ *  setMinProgressInterval() and setMinProgressDelta() limit how often onDownloadProgressUpdate
+ *  is called. An update is dispatched only when every configured threshold has been reached
+ *  since the previous one. The final update(current == total) is always dispatched.
+ *
+ *  Copy:
+ *  Response body is read through a ReadableByteChannel into a reused direct ByteBuffer and
+ *  written with FileChannel. setBufferSize() changes the chunk size(default 64KB).
+ *  Cancellation is checked between chunks.
+ *
+ *  Integrity:
+ *  setExpectedDigest() hashes the bytes in the copy buffer while they are written, and
+ *  setExpectedSize() checks the downloaded length. A response shorter than its Content-Length
+ *  always fails. On failure the partial file is removed, so no second pass over the file is needed.
+ *  Segmented download is not used when a digest is expected, since segments arrive out of order.
+ *
+ *  Atomic commit:
+ *  setAtomicCommit(true) writes into "[dest file].part", syncs it to the disk and renames it over
+ *  the destination only on SUCCESS. Readers of the destination see either the previous file or
+ *  the complete new one. The .part file is removed on failure/cancellation unless resumable.
+ *
+ *  Conditional GET:
+ *  setConditional(true) keeps ETag / Last-Modified of the downloaded file in "[dest file].meta"
+ *  and revalidates an existing destination with "If-None-Match" / "If-Modified-Since".
+ *  On 304 the task succeeds right away without touching the destination. The validators are
+ *  saved only after the body is complete and verified, so an interrupted download is never
+ *  revalidated.
+ *
+ *  Retry:
+ *  setRetryPolicy() retries attempts failed by an IOException(timeout, reset, truncated body)
+ *  or a 5xx / 429 response after an exponential backoff with jitter. Each retry resumes from
+ *  the bytes already written if the server supports ranges, even if setResumable() is false.
+ *  The policy also sets the connect/read timeouts. OnDownloadAttemptListener receives
+ *  the latency, received bytes and failure cause of every attempt. Segmented download retries
+ *  the range probe and each segment separately under the same policy.
+ *
+ *  Bandwidth limit:
+ *  setMaxBytesPerSecond() caps the download rate(shared by all segments). Unlike the other
+ *  setters it may be called while the task is running, e.g. when the network becomes metered.
+ *
+ *  Encryption:
+ *  setOutputCipher() encrypts the body while it is written, in the chunked format of
+ *  ChunkedCipherFile. The plain body never touches the disk. Read the file back with
+ *  ChunkedCipherInputStream or ChunkedCipherFile. Encrypted downloads are neither segmented nor
+ *  resumed(retries start over), and digest/size checks apply to the plain body.
  */
 public class DownloadUrlTask extends android.os.AsyncTask<Void, Integer, DownloadUrlTask.State> {
     private static final String TAG = DownloadUrlTask.class.getSimpleName();
@@ -25,13 +104,53 @@ public class DownloadUrlTask extends android.os.AsyncTask<Void, Integer, Downloa
         void onDownloadCancel();
     }
 
-    protected enum State { SUCCESS, FAIL, CANCELLED }
+    /**
+     * Called on the background thread after each attempt. In segmented download the range probe
+     * and every segment make attempts of their own, which may be reported from several threads
+     * at once.
+     */
+    public interface OnDownloadAttemptListener {
+        void onDownloadAttempt(DownloadAttempt attempt);
+    }
+
+    public enum State { SUCCESS, FAIL, CANCELLED, NOT_MODIFIED }
 
     private static final int TIMEOUT_MILLI = 7 * 1000;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int MAX_SEGMENT_THREAD_COUNT = 4;
+    private static final long MIN_SEGMENT_SIZE = 256 * 1024;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final String PART_FILE_SUFFIX = ".part";
 
     private String mUrl;
     private File mDestFile;
     private OnDownloadListener mOnDownloadListener;
+    private boolean mResumable = false;
+    private int mSegmentCount = 1;
+    private int mBufferSize = DEFAULT_BUFFER_SIZE;
+    private String mDigestAlgorithm;
+    private byte[] mExpectedDigest;
+    private long mExpectedSize = -1;
+    private boolean mAtomicCommit = false;
+    private boolean mConditional = false;
+    private RetryPolicy mRetryPolicy = new RetryPolicy(1);
+    private OnDownloadAttemptListener mOnDownloadAttemptListener;
+    private DownloadMetadata mRetryMetadata;
+
+    private AesGcmCipher mOutputCipher;
+
+    private volatile long mMaxBytesPerSecond = 0;
+    private final Object mThrottleLock = new Object();
+    private long mThrottleBytesPerSecond = 0;
+    private long mThrottleStartTimeMillis;
+    private long mThrottleBytes;
+
+    private long mMinProgressIntervalMillis = 0;
+    private long mMinProgressDeltaBytes = 0;
+    private int mMinProgressDeltaPercent = 0;
+    private long mLastPublishedTimeMillis = -1;
+    private int mLastPublishedAmount = -1;
 
     public DownloadUrlTask(String url, File destFile, OnDownloadListener onDownloadListener) {
         mUrl = url;
@@ -39,10 +158,180 @@ public class DownloadUrlTask extends android.os.AsyncTask<Void, Integer, Downloa
         mOnDownloadListener = onDownloadListener;
     }
 
+    /**
+     * Must be called before execute().
+     */
+    public void setResumable(boolean resumable) {
+        mResumable = resumable;
+    }
+
+    /**
+     * Must be called before execute(). Segmented download ignores setResumable().
+     *
+     * @param segmentCount number of byte ranges fetched concurrently. 1 disables segmentation.
+     */
+    public void setSegmentCount(int segmentCount) {
+        if (segmentCount < 1) {
+            throw new IllegalArgumentException("segmentCount must be at least 1");
+        }
+        mSegmentCount = segmentCount;
+    }
+
+    /**
+     * Must be called before execute().
+     *
+     * @param bufferSize size of the direct buffer used per connection to copy the response body.
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        mBufferSize = bufferSize;
+    }
+
+    /**
+     * Must be called before execute().
+     *
+     * @param algorithm MessageDigest algorithm name. e.g. "SHA-256"
+     * @param expectedDigest digest the downloaded file must have
+     */
+    public void setExpectedDigest(String algorithm, byte[] expectedDigest) {
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+        mDigestAlgorithm = algorithm;
+        mExpectedDigest = expectedDigest;
+    }
+
+    /**
+     * Must be called before execute().
+     *
+     * @param expectedSize size in bytes the downloaded file must have. -1 disables the check.
+     */
+    public void setExpectedSize(long expectedSize) {
+        mExpectedSize = expectedSize;
+    }
+
+    /**
+     * Must be called before execute().
+     */
+    public void setAtomicCommit(boolean atomicCommit) {
+        mAtomicCommit = atomicCommit;
+    }
+
+    /**
+     * Must be called before execute().
+     * The destination is kept until a new response body arrives, instead of being deleted up front.
+     */
+    public void setConditional(boolean conditional) {
+        mConditional = conditional;
+    }
+
+    /**
+     * Must be called before execute().
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Must be called before execute().
+     */
+    public void setOnDownloadAttemptListener(OnDownloadAttemptListener listener) {
+        mOnDownloadAttemptListener = listener;
+    }
+
+    /**
+     * Must be called before execute().
+     *
+     * @param cipher cipher to encrypt the file with. null writes the body as is.
+     */
+    public void setOutputCipher(AesGcmCipher cipher) {
+        mOutputCipher = cipher;
+    }
+
+    /**
+     * Can be called at any time.
+     *
+     * @param maxBytesPerSecond maximum download rate. 0 removes the limit.
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        if (maxBytesPerSecond < 0) {
+            throw new IllegalArgumentException("maxBytesPerSecond must not be negative");
+        }
+        mMaxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * Must be called before execute().
+     *
+     * @param minIntervalMillis minimum time between two progress updates. 0 disables the check.
+     */
+    public void setMinProgressInterval(long minIntervalMillis) {
+        mMinProgressIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Must be called before execute().
+     *
+     * @param minDeltaBytes minimum downloaded bytes between two progress updates.
+     *                      0 disables the check.
+     * @param minDeltaPercent minimum progress in percent between two progress updates.
+     *                        Ignored if the total size is unknown. 0 disables the check.
+     */
+    public void setMinProgressDelta(long minDeltaBytes, int minDeltaPercent) {
+        mMinProgressDeltaBytes = minDeltaBytes;
+        mMinProgressDeltaPercent = minDeltaPercent;
+    }
+
     @Override
     protected State doInBackground(Void... params) {
-        deleteFileIfExists();
-        return download(mUrl, mDestFile);
+        File workingFile = getWorkingFile();
+        State state = null;
+        if (mSegmentCount > 1 && mExpectedDigest == null && mOutputCipher == null) {
+            if (!mConditional) {
+                deleteFileIfExists();
+            }
+            state = downloadSegmented(mUrl, workingFile);
+        }
+        if (state == null) {
+            if (!mResumable && !mConditional) {
+                deleteFileIfExists();
+            }
+            state = downloadWithRetry(mUrl, workingFile);
+        }
+        if (state == State.NOT_MODIFIED) {
+            // Destination is up to date. Nothing to commit.
+            return State.SUCCESS;
+        }
+        if (mAtomicCommit) {
+            state = commit(state, workingFile);
+        }
+        return state;
+    }
+
+    /**
+     * File the response is written into. Same as the destination unless atomic commit is enabled.
+     */
+    private File getWorkingFile() {
+        return mAtomicCommit ? new File(mDestFile.getPath() + PART_FILE_SUFFIX) : mDestFile;
+    }
+
+    private State commit(State state, File partFile) {
+        if (state == State.SUCCESS) {
+            if (partFile.renameTo(mDestFile)) {
+                DownloadMetadata.move(partFile, mDestFile);
+                return State.SUCCESS;
+            }
+            Log.d(TAG, "Failed to rename " + partFile + " to " + mDestFile);
+            state = State.FAIL;
+        }
+        if (!mResumable) {
+            deleteFileIfExists();
+        }
+        return state;
     }
 
     @Override
@@ -80,39 +369,602 @@ public class DownloadUrlTask extends android.os.AsyncTask<Void, Integer, Downloa
     }
 
     private void publish(int amount, int total) {
+        publish(amount, total, false);
+    }
+
+    private synchronized void publish(int amount, int total, boolean force) {
+        boolean isFinal = total >= 0 && amount >= total;
+        if (amount == mLastPublishedAmount
+                || (!force && !isFinal && !shouldPublish(amount, total))) {
+            return;
+        }
+        mLastPublishedTimeMillis = SystemClock.elapsedRealtime();
+        mLastPublishedAmount = amount;
+        dispatchProgress(amount, total);
+    }
+
+    /**
+     * Hands an update that passed the throttling to publishProgress(). Overridden by tests to
+     * count the updates.
+     */
+    void dispatchProgress(int amount, int total) {
         publishProgress(amount, total);
     }
 
+    private boolean shouldPublish(int amount, int total) {
+        if (mLastPublishedAmount < 0) {
+            return true;
+        }
+        if (mMinProgressIntervalMillis > 0
+                && SystemClock.elapsedRealtime() - mLastPublishedTimeMillis < mMinProgressIntervalMillis) {
+            return false;
+        }
+        long delta = (long) amount - mLastPublishedAmount;
+        if (delta < mMinProgressDeltaBytes) {
+            return false;
+        }
+        return mMinProgressDeltaPercent <= 0 || total <= 0
+                || delta * 100 >= (long) mMinProgressDeltaPercent * total;
+    }
+
+    private State downloadWithRetry(String urlString, File outputFile) {
+        Random random = new Random();
+        int maxAttemptCount = mRetryPolicy.getMaxAttemptCount();
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            DownloadAttempt attempt = new DownloadAttempt(attemptNumber,
+                    SystemClock.elapsedRealtime());
+            State state = download(urlString, outputFile, attempt,
+                    attemptNumber == maxAttemptCount);
+            boolean willRetry;
+            try {
+                willRetry = finishAttempt(attempt, state == State.FAIL, random);
+            } catch (InterruptedException e) {
+                return State.CANCELLED;
+            }
+            if (!willRetry) {
+                if (state == State.FAIL && !mResumable && attemptNumber > 1) {
+                    // Remove what the previous attempts have written for resuming
+                    deleteFileIfExists();
+                }
+                return state;
+            }
+        }
+    }
+
+    /**
+     * Reports the attempt to the listener, and sleeps the backoff of the policy if the failure
+     * is going to be retried.
+     *
+     * @return true if the caller should make the next attempt
+     */
+    private boolean finishAttempt(DownloadAttempt attempt, boolean failed, Random random)
+            throws InterruptedException {
+        attempt.onFinish(SystemClock.elapsedRealtime());
+        boolean willRetry = failed && attempt.getAttempt() < mRetryPolicy.getMaxAttemptCount()
+                && isRetryable(attempt) && !isCancelled();
+        attempt.setWillRetry(willRetry);
+        if (mOnDownloadAttemptListener != null) {
+            mOnDownloadAttemptListener.onDownloadAttempt(attempt);
+        }
+        if (willRetry) {
+            Log.d(TAG, "Retrying: " + attempt);
+            Thread.sleep(mRetryPolicy.getBackoffMillis(attempt.getAttempt() + 1, random));
+        }
+        return willRetry;
+    }
+
+    private static boolean isRetryable(DownloadAttempt attempt) {
+        Throwable cause = attempt.getCause();
+        if (cause != null) {
+            return cause instanceof IOException
+                    && !(cause instanceof MalformedURLException)
+                    && !(cause instanceof FileNotFoundException);
+        }
+        int responseCode = attempt.getResponseCode();
+        return responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                || responseCode == HTTP_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Sleeps long enough to keep the rate since the limit was last changed under
+     * mMaxBytesPerSecond, after bytes have been received.
+     */
+    private void throttle(int bytes) {
+        long maxBytesPerSecond = mMaxBytesPerSecond;
+        long sleepMillis;
+        synchronized (mThrottleLock) {
+            long now = SystemClock.elapsedRealtime();
+            if (maxBytesPerSecond != mThrottleBytesPerSecond) {
+                mThrottleBytesPerSecond = maxBytesPerSecond;
+                mThrottleStartTimeMillis = now;
+                mThrottleBytes = 0;
+            }
+            if (maxBytesPerSecond <= 0) {
+                return;
+            }
+            mThrottleBytes += bytes;
+            long expectedMillis = mThrottleBytes * 1000 / maxBytesPerSecond;
+            sleepMillis = expectedMillis - (now - mThrottleStartTimeMillis);
+        }
+        if (sleepMillis > 0) {
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                // Cancelled. Caller checks isCancelled() on its next chunk.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private void deleteFileIfExists() {
-        if (mDestFile.exists()) {
-            mDestFile.delete();
+        File workingFile = getWorkingFile();
+        if (workingFile.exists()) {
+            workingFile.delete();
+        }
+        DownloadMetadata.delete(workingFile);
+    }
+
+    /**
+     * Adds validators of the destination file to the request, if it has been downloaded
+     * with setConditional(true) before.
+     *
+     * @return true if the request has been made conditional
+     */
+    private boolean setConditionalHeaders(HttpURLConnection conn) {
+        if (!mConditional || !mDestFile.exists()) {
+            return false;
+        }
+        DownloadMetadata metadata = DownloadMetadata.read(mDestFile);
+        if (metadata == null || metadata.isEmpty() || !metadata.isComplete(mDestFile)) {
+            return false;
+        }
+        if (metadata.getETag() != null) {
+            conn.setRequestProperty("If-None-Match", metadata.getETag());
+        }
+        if (metadata.getLastModified() != null) {
+            conn.setRequestProperty("If-Modified-Since", metadata.getLastModified());
+        }
+        return true;
+    }
+
+    private static long getResumeOffset(File outputFile, DownloadMetadata metadata) {
+        if (metadata == null || metadata.getRangeValidator() == null) {
+            return 0;
         }
+        return outputFile.exists() ? outputFile.length() : 0;
     }
 
-    private State download(String urlString, File outputFile) {
-        BufferedInputStream inputStream = null;
-        FileOutputStream outputStream = null;
+    /**
+     * Parses the first byte position of "Content-Range: bytes first-last/total".
+     */
+    private static long getContentRangeStart(HttpURLConnection conn) {
+        String contentRange = conn.getHeaderField("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        int start = contentRange.indexOf(' ') + 1;
+        int end = contentRange.indexOf('-', start);
+        if (end < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(start, end).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static HttpURLConnection openConnection(String urlString) throws IOException {
+        return openConnection(urlString, TIMEOUT_MILLI, TIMEOUT_MILLI);
+    }
+
+    static HttpURLConnection openConnection(String urlString, int connectTimeoutMillis,
+                                            int readTimeoutMillis) throws IOException {
+        URL url = new URL(urlString);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+
+        conn.setConnectTimeout(connectTimeoutMillis);
+        conn.setReadTimeout(readTimeoutMillis);
+        conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_9_3)" +
+                " AppleWebKit/537.75.14 (KHTML, like Gecko) Version/7.0.3 Safari/7046A194A");
+        return conn;
+    }
+
+    /**
+     * @param attempt 1-based attempt number, which the read timeout depends on
+     */
+    private HttpURLConnection openConnection(String urlString, int attempt) throws IOException {
+        return openConnection(urlString, mRetryPolicy.getConnectTimeoutMillis(),
+                mRetryPolicy.getReadTimeoutMillis(attempt));
+    }
+
+    /**
+     * Parses the complete length of "Content-Range: bytes first-last/total".
+     */
+    private static long getContentRangeTotal(HttpURLConnection conn) {
+        String contentRange = conn.getHeaderField("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return null if the server does not support range requests(caller should fall back to
+     * the single stream download)
+     */
+    private State downloadSegmented(String urlString, File outputFile) {
+        Random random = new Random();
+        boolean conditional = false;
+        int responseCode = -1;
+        long totalBytes = -1;
+        DownloadMetadata metadata = null;
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            DownloadAttempt attempt = new DownloadAttempt(attemptNumber,
+                    SystemClock.elapsedRealtime());
+            try {
+                HttpURLConnection probe = openConnection(urlString, attemptNumber);
+                probe.setRequestProperty("Range", "bytes=0-0");
+                conditional = setConditionalHeaders(probe);
+                responseCode = probe.getResponseCode();
+                attempt.onResponse(responseCode, SystemClock.elapsedRealtime());
+                if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    totalBytes = getContentRangeTotal(probe);
+                    metadata = DownloadMetadata.from(probe);
+                    CloseableUtils.drainQuietly(probe.getInputStream());
+                } else if (isRetryable(attempt)) {
+                    CloseableUtils.drainQuietly(probe.getErrorStream());
+                } else if (responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    // The whole body would follow. Drop the connection instead of reading it.
+                    probe.disconnect();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                attempt.setCause(e);
+            }
+            boolean failed = attempt.getCause() != null || isRetryable(attempt);
+            try {
+                if (!finishAttempt(attempt, failed, random)) {
+                    if (failed) {
+                        return State.FAIL;
+                    }
+                    break;
+                }
+            } catch (InterruptedException e) {
+                return State.CANCELLED;
+            }
+        }
+        if (conditional && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return State.NOT_MODIFIED;
+        }
+        if (responseCode != HttpURLConnection.HTTP_PARTIAL || totalBytes <= 0) {
+            return null;
+        }
+        if (mExpectedSize >= 0 && totalBytes != mExpectedSize) {
+            Log.d(TAG, "Unexpected size: " + totalBytes);
+            return State.FAIL;
+        }
+
+        int segmentCount = (int) Math.min(mSegmentCount,
+                (totalBytes + MIN_SEGMENT_SIZE - 1) / MIN_SEGMENT_SIZE);
+        long segmentSize = (totalBytes + segmentCount - 1) / segmentCount;
+
+        RandomAccessFile file = null;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(segmentCount, MAX_SEGMENT_THREAD_COUNT));
+        try {
+            // Validators of the previous file must not outlive its content
+            DownloadMetadata.delete(outputFile);
+            file = new RandomAccessFile(outputFile, "rw");
+            file.setLength(totalBytes);
+            FileChannel channel = file.getChannel();
+            AtomicLong totalBytesRead = new AtomicLong();
+
+            CompletionService<State> completionService =
+                    new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < segmentCount; i++) {
+                long start = i * segmentSize;
+                long end = Math.min(totalBytes, start + segmentSize) - 1;
+                completionService.submit(new Segment(urlString, metadata.getRangeValidator(),
+                        channel, start, end, totalBytes, totalBytesRead));
+            }
+
+            // Segments are collected in the order they finish, so the first failure stops the
+            // others(shutdownNow() below) without waiting for the segments before it.
+            State state = State.SUCCESS;
+            for (int i = 0; i < segmentCount; i++) {
+                State segmentState = completionService.take().get();
+                if (segmentState != State.SUCCESS) {
+                    state = segmentState;
+                    break;
+                }
+            }
+            if (state != State.SUCCESS) {
+                deleteFileIfExists();
+                return state;
+            }
+            if (mAtomicCommit) {
+                channel.force(true);
+            }
+            if (mConditional) {
+                metadata.complete(totalBytes).write(outputFile);
+            }
+            return state;
+        } catch (IOException | ExecutionException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return State.CANCELLED;
+        } finally {
+            executor.shutdownNow();
+            CloseableUtils.closeQuietly(file);
+        }
+
+        deleteFileIfExists();
+        return State.FAIL;
+    }
+
+    private class Segment implements Callable<State> {
+        private final String mUrl;
+        private final String mRangeValidator;
+        private final FileChannel mChannel;
+        private final long mEnd;
+        private final long mTotalBytes;
+        private final AtomicLong mTotalBytesRead;
+        private long mPosition;
+
+        Segment(String url, String rangeValidator, FileChannel channel, long start, long end,
+                long totalBytes, AtomicLong totalBytesRead) {
+            mUrl = url;
+            mRangeValidator = rangeValidator;
+            mChannel = channel;
+            mPosition = start;
+            mEnd = end;
+            mTotalBytes = totalBytes;
+            mTotalBytesRead = totalBytesRead;
+        }
+
+        @Override
+        public State call() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(mBufferSize);
+            Random random = new Random();
+            for (int attemptNumber = 1; ; attemptNumber++) {
+                DownloadAttempt attempt = new DownloadAttempt(attemptNumber,
+                        SystemClock.elapsedRealtime());
+                attempt.setOffset(mPosition);
+                State state = download(attempt, buffer);
+                try {
+                    if (!finishAttempt(attempt, state == State.FAIL, random)) {
+                        return state;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return State.CANCELLED;
+                }
+            }
+        }
+
+        /**
+         * Downloads the rest of the segment from mPosition in a single request.
+         */
+        private State download(DownloadAttempt attempt, ByteBuffer buffer) {
+            ReadableByteChannel inputChannel = null;
+            try {
+                HttpURLConnection conn = openConnection(mUrl, attempt.getAttempt());
+                conn.setRequestProperty("Range", "bytes=" + mPosition + "-" + mEnd);
+                if (mRangeValidator != null) {
+                    conn.setRequestProperty("If-Range", mRangeValidator);
+                }
+                int responseCode = conn.getResponseCode();
+                attempt.onResponse(responseCode, SystemClock.elapsedRealtime());
+                if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                    // Retried if 5xx / 429
+                    CloseableUtils.drainQuietly(conn.getErrorStream());
+                    return State.FAIL;
+                }
+                if (responseCode != HttpURLConnection.HTTP_PARTIAL
+                        || getContentRangeStart(conn) != mPosition) {
+                    // The resource has changed since the download started
+                    conn.disconnect();
+                    return State.FAIL;
+                }
+
+                inputChannel = Channels.newChannel(conn.getInputStream());
+                int bytesRead;
+                while (mPosition <= mEnd) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), mEnd - mPosition + 1));
+                    if ((bytesRead = inputChannel.read(buffer)) == -1) {
+                        throw new EOFException("Truncated segment: " + mPosition + " / " + mEnd);
+                    }
+                    attempt.addBytesReceived(bytesRead);
+                    if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                        return State.CANCELLED;
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        mPosition += mChannel.write(buffer, mPosition);
+                    }
+                    synchronized (DownloadUrlTask.this) {
+                        // Sum and publish together, so the progress of segments never goes back
+                        publish((int) mTotalBytesRead.addAndGet(bytesRead), (int) mTotalBytes);
+                    }
+                    throttle(bytesRead);
+                }
+                return State.SUCCESS;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // Stopped because another segment has failed, which is not a failure of its own
+                    return State.CANCELLED;
+                }
+                e.printStackTrace();
+                attempt.setCause(e);
+            } finally {
+                CloseableUtils.closeQuietly(inputChannel);
+            }
+            return State.FAIL;
+        }
+    }
+
+    /**
+     * Hashes the first length bytes of the file, which have been downloaded previously.
+     */
+    private static void updateDigest(MessageDigest digest, File file, long length,
+                                     ByteBuffer buffer) throws IOException {
+        FileChannel channel = null;
+        try {
+            channel = new RandomAccessFile(file, "r").getChannel();
+            long position = 0;
+            while (position < length) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), length - position));
+                int bytesRead = channel.read(buffer, position);
+                if (bytesRead == -1) {
+                    throw new IOException("File is shorter than " + length);
+                }
+                position += bytesRead;
+                buffer.flip();
+                digest.update(buffer);
+            }
+            buffer.clear();
+        } finally {
+            CloseableUtils.closeQuietly(channel);
+        }
+    }
+
+    private boolean isIntact(long totalBytesRead, MessageDigest digest) {
+        if (mExpectedSize >= 0 && totalBytesRead != mExpectedSize) {
+            Log.d(TAG, "Unexpected size: " + totalBytesRead);
+            return false;
+        }
+        if (digest != null && !MessageDigest.isEqual(digest.digest(), mExpectedDigest)) {
+            Log.d(TAG, "Digest mismatch");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Verifies a file whose every byte has already been downloaded by a previous attempt.
+     */
+    private State completeExistingFile(File outputFile, DownloadMetadata metadata, long length)
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = null;
+        if (mExpectedDigest != null) {
+            digest = MessageDigest.getInstance(mDigestAlgorithm);
+            updateDigest(digest, outputFile, length, ByteBuffer.allocate(mBufferSize));
+        }
+        if (!isIntact(length, digest)) {
+            deleteFileIfExists();
+            return State.FAIL;
+        }
+        if (mResumable || mConditional) {
+            metadata.complete(length).write(outputFile);
+        }
+        publish((int) length, (int) length, true);
+        return State.SUCCESS;
+    }
+
+    /**
+     * @param lastAttempt false if a failure is going to be retried, in which case the partial file
+     *                    is kept for resuming.
+     */
+    private State download(String urlString, File outputFile, DownloadAttempt attempt,
+                           boolean lastAttempt) {
+        ReadableByteChannel inputChannel = null;
+        FileChannel outputChannel = null;
         try {
-            URL url = new URL(urlString);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            // Without setResumable(), retries resume with the validators of the previous attempt.
+            // Encrypted files are never appended to.
+            DownloadMetadata metadata = mOutputCipher != null ? null
+                    : mResumable ? DownloadMetadata.read(outputFile) : mRetryMetadata;
+            long offset = getResumeOffset(outputFile, metadata);
+            attempt.setOffset(offset);
 
-            conn.setConnectTimeout(TIMEOUT_MILLI);
-            conn.setReadTimeout(TIMEOUT_MILLI);
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_9_3)" +
-                    " AppleWebKit/537.75.14 (KHTML, like Gecko) Version/7.0.3 Safari/7046A194A");
+            HttpURLConnection conn = openConnection(urlString, attempt.getAttempt());
+            boolean conditional = false;
+            if (offset > 0) {
+                conn.setRequestProperty("Range", "bytes=" + offset + "-");
+                conn.setRequestProperty("If-Range", metadata.getRangeValidator());
+            } else {
+                conditional = setConditionalHeaders(conn);
+            }
 
             int responseCode = conn.getResponseCode();
+            attempt.onResponse(responseCode, SystemClock.elapsedRealtime());
             Log.d(TAG, String.valueOf(responseCode));
-            inputStream = new BufferedInputStream(conn.getInputStream());
-            int totalBytes = conn.getContentLength();
+            boolean append = false;
+            if (conditional && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return State.NOT_MODIFIED;
+            } else if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                if (getContentRangeStart(conn) != offset) {
+                    deleteFileIfExists();
+                    return State.FAIL;
+                }
+                append = true;
+            } else if (responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                CloseableUtils.drainQuietly(conn.getErrorStream());
+                if (getContentRangeTotal(conn) == offset) {
+                    // If-Range matched and nothing is left to download. The file is complete.
+                    return completeExistingFile(outputFile, metadata, offset);
+                }
+                // Partial file is no longer valid for the resource. Start over on next attempt.
+                deleteFileIfExists();
+                return State.FAIL;
+            } else if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                // Drain the error body so that the connection can be reused
+                CloseableUtils.drainQuietly(conn.getErrorStream());
+                return State.FAIL;
+            } else {
+                offset = 0;
+            }
+            mRetryMetadata = DownloadMetadata.from(conn);
+            if (!append) {
+                // Validators of the previous file must not outlive its content
+                DownloadMetadata.delete(outputFile);
+            }
+            if (mResumable) {
+                // Written before the body so that an interrupted download can be resumed.
+                // It has no length until the body is complete, so it never revalidates a torn file.
+                mRetryMetadata.write(outputFile);
+            }
 
-            byte[] buffer = new byte[4096];
+            int contentLength = conn.getContentLength();
+            long totalBytes = contentLength >= 0 ? offset + contentLength : contentLength;
+            if (mExpectedSize >= 0 && totalBytes >= 0 && totalBytes != mExpectedSize) {
+                Log.d(TAG, "Unexpected size: " + totalBytes);
+                conn.disconnect();
+                deleteFileIfExists();
+                return State.FAIL;
+            }
+            inputChannel = Channels.newChannel(conn.getInputStream());
 
-            int totalBytesRead = 0;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(mBufferSize);
+            MessageDigest digest = null;
+            if (mExpectedDigest != null) {
+                digest = MessageDigest.getInstance(mDigestAlgorithm);
+                if (append) {
+                    updateDigest(digest, outputFile, offset, buffer);
+                }
+            }
+
+            long totalBytesRead = offset;
             int bytesRead;
-            outputStream = new FileOutputStream(outputFile);
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
+            FileOutputStream fileOutputStream = new FileOutputStream(outputFile, append);
+            outputChannel = fileOutputStream.getChannel();
+            WritableByteChannel writeChannel = outputChannel;
+            ChunkedCipherOutputStream cipherOutputStream = null;
+            if (mOutputCipher != null) {
+                cipherOutputStream = new ChunkedCipherOutputStream(fileOutputStream, mOutputCipher);
+                writeChannel = Channels.newChannel(cipherOutputStream);
+            }
+            while ((bytesRead = inputChannel.read(buffer)) != -1) {
                 totalBytesRead += bytesRead;
+                attempt.addBytesReceived(bytesRead);
                 if (isCancelled()) {
                     return State.CANCELLED;
                 }
@@ -124,16 +976,51 @@ public class DownloadUrlTask extends android.os.AsyncTask<Void, Integer, Downloa
 //                    e.printStackTrace();
 //                }
 
-                outputStream.write(buffer, 0, bytesRead);
-                publish(totalBytesRead, totalBytes);
+                buffer.flip();
+                if (digest != null) {
+                    buffer.mark();
+                    digest.update(buffer);
+                    buffer.reset();
+                }
+                while (buffer.hasRemaining()) {
+                    writeChannel.write(buffer);
+                }
+                buffer.clear();
+                publish((int) totalBytesRead, (int) totalBytes);
+                throttle(bytesRead);
+            }
+
+            if (totalBytes >= 0 && totalBytesRead != totalBytes) {
+                throw new EOFException("Truncated: " + totalBytesRead + " / " + totalBytes);
+            }
+            if (!isIntact(totalBytesRead, digest)) {
+                CloseableUtils.closeQuietly(outputChannel);
+                deleteFileIfExists();
+                return State.FAIL;
+            }
+            if (cipherOutputStream != null) {
+                cipherOutputStream.finish();
             }
+            if (mAtomicCommit) {
+                outputChannel.force(true);
+            }
+            if (mResumable || mConditional) {
+                mRetryMetadata.complete(outputFile.length()).write(outputFile);
+            }
+            publish((int) totalBytesRead, (int) totalBytes, true);
 
             return State.SUCCESS;
-        } catch (IOException e) {
+        } catch (IOException | NoSuchAlgorithmException e) {
             e.printStackTrace();
+            attempt.setCause(e);
+            if (!mResumable && lastAttempt) {
+                // Partial file is useless unless it is going to be resumed
+                CloseableUtils.closeQuietly(outputChannel);
+                deleteFileIfExists();
+            }
         } finally {
-            CloseableUtils.closeQuietly(inputStream);
-            CloseableUtils.closeQuietly(outputStream);
+            CloseableUtils.closeQuietly(inputChannel);
+            CloseableUtils.closeQuietly(outputChannel);
         }
 
         return State.FAIL;
@@ -1,8 +1,6 @@
 package com.yooiistudios.coreutils;
 
-import android.util.Log;
-
-import java.lang.reflect.Array;
+import java.util.Arrays;
 
 /**
  * Created by Dongheyon Jeong in Randombox_Android from Yooii Studios Co., LTD. on 15. 7. 5.
@@ -23,6 +21,15 @@ import java.lang.reflect.Array;
  *    return result;
  *  }
  * </pre>
+ *
+ * Fluent use case(reusable, allocation-free after creation):
+ * <pre>
+ *  private final HashCodeUtils.Hasher fHasher = HashCodeUtils.newHasher(HashCodeUtils.Mixer.MURMUR3);
+ *
+ *  public int hashCode(){
+ *    return fHasher.reset().put(fLatitude).put(fLongitude).put(fObject).hash();
+ *  }
+ * </pre>
  */
 public class HashCodeUtils {
     /**
@@ -32,17 +39,13 @@ public class HashCodeUtils {
      */
     public static final int SEED = 23;
 
-    private static final String TAG = HashCodeUtils.class.getSimpleName();
-
     /** booleans.  */
     public static int hash(int aSeed, boolean aBoolean) {
-        log("boolean...");
         return firstTerm( aSeed ) + (aBoolean ? 1 : 0);
     }
 
     /*** chars.  */
     public static int hash(int aSeed, char aChar) {
-        log("char...");
         return firstTerm(aSeed) + (int)aChar;
     }
 
@@ -53,13 +56,11 @@ public class HashCodeUtils {
     * Note that byte and short are handled by this method, through
     * implicit conversion.
     */
-        log("int...");
         return firstTerm(aSeed) + aInt;
     }
 
     /** longs.  */
     public static int hash(int aSeed , long aLong) {
-        log("long...");
         return firstTerm(aSeed)  + (int)(aLong ^ (aLong >>> 32));
     }
 
@@ -77,31 +78,237 @@ public class HashCodeUtils {
      * <tt>aObject</tt> is a possibly-null object field, and possibly an array.
      *
      * If <tt>aObject</tt> is an array, then each element may be a primitive
-     * or a possibly-null object.
+     * or a possibly-null object. Primitive arrays are hashed without boxing.
      */
     public static int hash(int aSeed , Object aObject) {
-        int result = aSeed;
-        if (aObject == null){
-            result = hash(result, 0);
+        return hash(aSeed, aObject, UNBOUNDED);
+    }
+
+    /**
+     * Same as {@link #hash(int, Object)}, but visits at most <tt>aMaxElements</tt> array
+     * elements in total. Arrays larger than their share of the budget are sampled with an even
+     * stride, so the cost stays bounded for very large arrays.
+     *
+     * The budget of an array is split evenly among its sampled elements, and what an element
+     * does not use goes to the following ones. So every row of a large grid(e.g. Object[] of
+     * int[]) is sampled, instead of the first rows using up the whole budget.
+     *
+     * Nested arrays are walked with an explicit stack instead of recursion, and an array
+     * which is already being walked(i.e. references one of its ancestors) is skipped.
+     * The stack is only allocated once a nested Object[] is found.
+     *
+     * <tt>Integer.MAX_VALUE</tt> means no limit: every element is visited, and the result
+     * equals {@link #hash(int, Object)}.
+     */
+    public static int hash(int aSeed, Object aObject, int aMaxElements) {
+        if (aMaxElements <= 0) {
+            throw new IllegalArgumentException("aMaxElements must be positive");
         }
-        else if (!isArray(aObject)){
-            result = hash(result, aObject.hashCode());
+        if (aObject == null || !(aObject instanceof Object[])) {
+            return hashItem(aSeed, aObject, aMaxElements);
         }
-        else {
-            int length = Array.getLength(aObject);
-            for (int idx = 0; idx < length; ++idx) {
-                Object item = Array.get(aObject, idx);
-                //if an item in the array references the array itself, prevent infinite looping
-                if(! (item == aObject))
-                    //recursive call!
-                    result = hash(result, item);
+
+        Object[] array = (Object[]) aObject;
+        int stride = strideOf(array.length, aMaxElements);
+        int budget = aMaxElements;
+        int result = aSeed;
+        for (int index = 0; index < array.length; index += stride) {
+            Object item = array[index];
+            if (item instanceof Object[]) {
+                return hashNestedArrays(result, array, index, stride, budget);
             }
+            int itemBudget = shareOf(budget, getVisitCount(array.length - index, stride));
+            result = hashItem(result, item, itemBudget);
+            budget = spend(budget, 1 + getUsedBudget(item, itemBudget));
         }
         return result;
     }
 
+    public static Hasher newHasher() {
+        return newHasher(Mixer.MURMUR3);
+    }
+
+    public static Hasher newHasher(Mixer aMixer) {
+        return new Hasher(aMixer);
+    }
+
+    /**
+     * Mixing scheme of {@link Hasher}.
+     * <ul>
+     *  <li><tt>BLOCH</tt>: same <tt>37 * seed + value</tt> chaining as the static methods.</li>
+     *  <li><tt>MURMUR3</tt>: Murmur3 x64 block mixing with <tt>fmix64</tt> finalization.</li>
+     *  <li><tt>XXHASH</tt>: xxHash64 rounds with its avalanche finalization.</li>
+     * </ul>
+     */
+    public enum Mixer {
+        BLOCH {
+            @Override
+            long initialState() {
+                return SEED;
+            }
+
+            @Override
+            long mix(long aState, long aValue) {
+                return hash((int) aState, aValue);
+            }
+
+            @Override
+            long mix(long aState, int aValue) {
+                return hash((int) aState, aValue);
+            }
+
+            @Override
+            long finish(long aState, int aLength) {
+                return (int) aState;
+            }
+        },
+        MURMUR3 {
+            private static final long C1 = 0x87c37b91114253d5L;
+            private static final long C2 = 0x4cf5ad432745937fL;
+
+            @Override
+            long initialState() {
+                return 0;
+            }
+
+            @Override
+            long mix(long aState, long aValue) {
+                long k = aValue * C1;
+                k = Long.rotateLeft(k, 31);
+                k *= C2;
+                long h = aState ^ k;
+                h = Long.rotateLeft(h, 27);
+                return h * 5 + 0x52dce729;
+            }
+
+            @Override
+            long finish(long aState, int aLength) {
+                long h = aState ^ aLength;
+                h ^= h >>> 33;
+                h *= 0xff51afd7ed558ccdL;
+                h ^= h >>> 33;
+                h *= 0xc4ceb9fe1a85ec53L;
+                h ^= h >>> 33;
+                return h;
+            }
+        },
+        XXHASH {
+            private static final long P1 = 0x9E3779B185EBCA87L;
+            private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+            private static final long P3 = 0x165667B19E3779F9L;
+            private static final long P4 = 0x85EBCA77C2B2AE63L;
+            private static final long P5 = 0x27D4EB2F165667C5L;
+
+            @Override
+            long initialState() {
+                return P5;
+            }
+
+            @Override
+            long mix(long aState, long aValue) {
+                long k = aValue * P2;
+                k = Long.rotateLeft(k, 31);
+                k *= P1;
+                long h = aState ^ k;
+                return Long.rotateLeft(h, 27) * P1 + P4;
+            }
+
+            @Override
+            long finish(long aState, int aLength) {
+                long h = aState + aLength;
+                h ^= h >>> 33;
+                h *= P2;
+                h ^= h >>> 29;
+                h *= P3;
+                h ^= h >>> 32;
+                return h;
+            }
+        };
+
+        abstract long initialState();
+
+        abstract long mix(long aState, long aValue);
+
+        long mix(long aState, int aValue) {
+            return mix(aState, aValue & 0xffffffffL);
+        }
+
+        abstract long finish(long aState, int aLength);
+    }
+
+    /**
+     * Streaming hasher which mixes each value into its state as it is put.
+     * Not thread-safe; call {@link #reset()} to reuse an instance.
+     */
+    public static final class Hasher {
+        private final Mixer fMixer;
+        private long fState;
+        private int fLength;
+
+        private Hasher(Mixer aMixer) {
+            fMixer = aMixer;
+            reset();
+        }
+
+        public Hasher reset() {
+            fState = fMixer.initialState();
+            fLength = 0;
+            return this;
+        }
+
+        public Hasher put(boolean aBoolean) {
+            return put(aBoolean ? 1 : 0);
+        }
+
+        public Hasher put(char aChar) {
+            return put((int) aChar);
+        }
+
+        public Hasher put(int aInt) {
+            fState = fMixer.mix(fState, aInt);
+            fLength += 4;
+            return this;
+        }
+
+        public Hasher put(long aLong) {
+            fState = fMixer.mix(fState, aLong);
+            fLength += 8;
+            return this;
+        }
+
+        public Hasher put(float aFloat) {
+            return put(Float.floatToIntBits(aFloat));
+        }
+
+        public Hasher put(double aDouble) {
+            return put(Double.doubleToLongBits(aDouble));
+        }
+
+        /** Possibly-null object, possibly an array. See {@link HashCodeUtils#hash(int, Object)}. */
+        public Hasher put(Object aObject) {
+            if (aObject == null) {
+                return put(0);
+            }
+            return put(isArray(aObject) ? HashCodeUtils.hash(SEED, aObject) : aObject.hashCode());
+        }
+
+        /** 32-bit result. Does not reset the state. */
+        public int hash() {
+            long result = hash64();
+            return fMixer == Mixer.BLOCH ? (int) result : (int) (result ^ (result >>> 32));
+        }
+
+        /** 64-bit result. Does not reset the state. */
+        public long hash64() {
+            return fMixer.finish(fState, fLength);
+        }
+    }
+
     // PRIVATE
     private static final int fODD_PRIME_NUMBER = 37;
+    private static final int INITIAL_STACK_SIZE = 8;
+    // Budget of the exact hash. It is never split nor spent, so no array is sampled.
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
 
     private static int firstTerm(int aSeed){
         return fODD_PRIME_NUMBER * aSeed;
@@ -111,8 +318,274 @@ public class HashCodeUtils {
         return aObject.getClass().isArray();
     }
 
-    private static void log(String aMessage){
-        Log.d(TAG, aMessage);
-        System.out.println(aMessage);
+    /**
+     * @param aBudget must be positive
+     */
+    private static int strideOf(int aLength, int aBudget) {
+        if (aLength <= aBudget) {
+            return 1;
+        }
+        return (aLength + aBudget - 1) / aBudget;
+    }
+
+    /**
+     * @return budget of each of the next <tt>aVisitCount</tt> elements, after one unit for
+     * the element itself
+     */
+    private static int shareOf(int aBudget, int aVisitCount) {
+        if (aBudget == UNBOUNDED) {
+            return UNBOUNDED;
+        }
+        return aBudget / aVisitCount - 1;
+    }
+
+    private static int spend(int aBudget, int aUsed) {
+        return aBudget == UNBOUNDED ? UNBOUNDED : aBudget - aUsed;
+    }
+
+    /**
+     * @return number of elements visited out of <tt>aLength</tt> with <tt>aStride</tt>
+     */
+    private static int getVisitCount(int aLength, int aStride) {
+        return (aLength + aStride - 1) / aStride;
+    }
+
+    /**
+     * @return number of elements of <tt>aItem</tt> visited by {@link #hashItem}
+     */
+    private static int getUsedBudget(Object aItem, int aBudget) {
+        if (aBudget <= 0 || aItem == null || !isArray(aItem)) {
+            return 0;
+        }
+        int length = lengthOf(aItem);
+        return getVisitCount(length, strideOf(length, aBudget));
+    }
+
+    /**
+     * Hashes anything but <tt>Object[]</tt>, visiting at most <tt>aBudget</tt> elements of
+     * a primitive array.
+     */
+    private static int hashItem(int aSeed, Object aItem, int aBudget) {
+        if (aItem == null) {
+            return hash(aSeed, 0);
+        }
+        else if (!isArray(aItem)) {
+            return hash(aSeed, aItem.hashCode());
+        }
+        else if (aBudget <= 0) {
+            // No budget left for the elements
+            return aSeed;
+        }
+        return hashPrimitiveArray(aSeed, aItem, strideOf(lengthOf(aItem), aBudget));
+    }
+
+    /**
+     * Continues {@link #hash(int, Object, int)} from <tt>aIndex</tt> of the top level array,
+     * which is a nested <tt>Object[]</tt>.
+     */
+    private static int hashNestedArrays(int aSeed, Object[] aArray, int aIndex, int aStride,
+                                        int aBudget) {
+        int result = aSeed;
+        Object[][] arrays = new Object[INITIAL_STACK_SIZE][];
+        int[] indices = new int[INITIAL_STACK_SIZE];
+        int[] strides = new int[INITIAL_STACK_SIZE];
+        int[] budgets = new int[INITIAL_STACK_SIZE];
+        int depth = 0;
+        arrays[0] = aArray;
+        indices[0] = aIndex;
+        strides[0] = aStride;
+        budgets[0] = aBudget;
+
+        while (depth >= 0) {
+            Object[] array = arrays[depth];
+            int index = indices[depth];
+            if (index >= array.length) {
+                // Leave what has not been used to the following elements of the parent
+                int unusedBudget = budgets[depth];
+                arrays[depth--] = null;
+                if (depth >= 0) {
+                    budgets[depth] = spend(budgets[depth], -unusedBudget);
+                }
+                continue;
+            }
+            int stride = strides[depth];
+            int itemBudget = shareOf(budgets[depth], getVisitCount(array.length - index, stride));
+            indices[depth] = index + stride;
+
+            Object item = array[index];
+            if (!(item instanceof Object[])) {
+                result = hashItem(result, item, itemBudget);
+                budgets[depth] = spend(budgets[depth], 1 + getUsedBudget(item, itemBudget));
+            }
+            else if (itemBudget <= 0 || isOnStack(arrays, depth, item)) {
+                budgets[depth] = spend(budgets[depth], 1);
+            }
+            else {
+                budgets[depth] = spend(budgets[depth], 1 + itemBudget);
+                if (++depth == arrays.length) {
+                    int newSize = arrays.length * 2;
+                    arrays = Arrays.copyOf(arrays, newSize);
+                    indices = Arrays.copyOf(indices, newSize);
+                    strides = Arrays.copyOf(strides, newSize);
+                    budgets = Arrays.copyOf(budgets, newSize);
+                }
+                arrays[depth] = (Object[]) item;
+                indices[depth] = 0;
+                strides[depth] = strideOf(arrays[depth].length, itemBudget);
+                budgets[depth] = itemBudget;
+            }
+        }
+        return result;
+    }
+
+    private static int lengthOf(Object aPrimitiveArray) {
+        if (aPrimitiveArray instanceof int[]) {
+            return ((int[]) aPrimitiveArray).length;
+        } else if (aPrimitiveArray instanceof long[]) {
+            return ((long[]) aPrimitiveArray).length;
+        } else if (aPrimitiveArray instanceof float[]) {
+            return ((float[]) aPrimitiveArray).length;
+        } else if (aPrimitiveArray instanceof double[]) {
+            return ((double[]) aPrimitiveArray).length;
+        } else if (aPrimitiveArray instanceof byte[]) {
+            return ((byte[]) aPrimitiveArray).length;
+        } else if (aPrimitiveArray instanceof char[]) {
+            return ((char[]) aPrimitiveArray).length;
+        } else if (aPrimitiveArray instanceof short[]) {
+            return ((short[]) aPrimitiveArray).length;
+        } else {
+            return ((boolean[]) aPrimitiveArray).length;
+        }
+    }
+
+    private static boolean isOnStack(Object[][] aArrays, int aDepth, Object aItem) {
+        for (int i = 0; i <= aDepth; i++) {
+            if (aArrays[i] == aItem) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+    * Implementation Note
+    * Elements of primitive arrays contribute the same value their boxed type's
+    * hashCode() would, so the result equals hashing the array as an Object.
+    * The typed overloads are private: public ones would make hash(seed, null) ambiguous.
+    */
+    private static int hashPrimitiveArray(int aSeed, Object aArray, int aStride) {
+        if (aArray instanceof int[]) {
+            return hash(aSeed, (int[]) aArray, aStride);
+        } else if (aArray instanceof long[]) {
+            return hash(aSeed, (long[]) aArray, aStride);
+        } else if (aArray instanceof float[]) {
+            return hash(aSeed, (float[]) aArray, aStride);
+        } else if (aArray instanceof double[]) {
+            return hash(aSeed, (double[]) aArray, aStride);
+        } else if (aArray instanceof byte[]) {
+            return hash(aSeed, (byte[]) aArray, aStride);
+        } else if (aArray instanceof char[]) {
+            return hash(aSeed, (char[]) aArray, aStride);
+        } else if (aArray instanceof short[]) {
+            return hash(aSeed, (short[]) aArray, aStride);
+        } else {
+            return hash(aSeed, (boolean[]) aArray, aStride);
+        }
+    }
+
+    private static int hash(int aSeed, boolean[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            boolean item = aArray[i];
+            result = firstTerm(result) + (item ? 1231 : 1237);
+        }
+        return result;
+    }
+
+    private static int hash(int aSeed, char[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            char item = aArray[i];
+            result = firstTerm(result) + (int) item;
+        }
+        return result;
+    }
+
+    private static int hash(int aSeed, byte[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            byte item = aArray[i];
+            result = firstTerm(result) + item;
+        }
+        return result;
+    }
+
+    private static int hash(int aSeed, short[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            short item = aArray[i];
+            result = firstTerm(result) + item;
+        }
+        return result;
+    }
+
+    private static int hash(int aSeed, int[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            int item = aArray[i];
+            result = firstTerm(result) + item;
+        }
+        return result;
+    }
+
+    private static int hash(int aSeed, long[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            long item = aArray[i];
+            result = firstTerm(result) + (int) (item ^ (item >>> 32));
+        }
+        return result;
+    }
+
+    private static int hash(int aSeed, float[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            float item = aArray[i];
+            result = firstTerm(result) + Float.floatToIntBits(item);
+        }
+        return result;
+    }
+
+    private static int hash(int aSeed, double[] aArray, int aStride) {
+        if (aArray == null) {
+            return hash(aSeed, 0);
+        }
+        int result = aSeed;
+        for (int i = 0; i < aArray.length; i += aStride) {
+            long bits = Double.doubleToLongBits(aArray[i]);
+            result = firstTerm(result) + (int) (bits ^ (bits >>> 32));
+        }
+        return result;
     }
 }
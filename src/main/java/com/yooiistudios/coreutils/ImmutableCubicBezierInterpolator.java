@@ -0,0 +1,162 @@
+package com.yooiistudios.coreutils;
+
+import android.view.animation.Interpolator;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ImmutableCubicBezierInterpolator
+ *  Thread-safe variant of CubicBezierInterpolator.
+ *  Coefficients and the sample table are computed once and never written afterwards,
+ *  so a single instance can be shared between threads and animators.
+ *
+ *  Usage:
+ *      Interpolator interpolator = ImmutableCubicBezierInterpolator.obtain(.4f, 0, .2f, 1);
+ *
+ *  obtain() interns instances by control points, so the app keeps one object per distinct curve.
+ */
+public final class ImmutableCubicBezierInterpolator implements Interpolator {
+    private static final ConcurrentHashMap<CurveKey, ImmutableCubicBezierInterpolator> sCache =
+            new ConcurrentHashMap<>();
+
+    private final float mStartX;
+    private final float mStartY;
+    private final float mEndX;
+    private final float mEndY;
+
+    private final float mAx;
+    private final float mBx;
+    private final float mCx;
+    private final float mAy;
+    private final float mBy;
+    private final float mCy;
+
+    private final float[] mSampleValues;
+    private final float mEpsilon;
+
+    private ImmutableCubicBezierInterpolator(float startX, float startY, float endX, float endY) {
+        mStartX = startX;
+        mStartY = startY;
+        mEndX = endX;
+        mEndY = endY;
+
+        mCx = CubicBezierInterpolator.getCoefficientC(startX);
+        mBx = CubicBezierInterpolator.getCoefficientB(startX, endX);
+        mAx = CubicBezierInterpolator.getCoefficientA(startX, endX);
+        mCy = CubicBezierInterpolator.getCoefficientC(startY);
+        mBy = CubicBezierInterpolator.getCoefficientB(startY, endY);
+        mAy = CubicBezierInterpolator.getCoefficientA(startY, endY);
+
+        mSampleValues = CubicBezierInterpolator.createSampleValues(mAx, mBx, mCx,
+                CubicBezierInterpolator.DEFAULT_SAMPLE_SIZE);
+        mEpsilon = CubicBezierInterpolator.DEFAULT_EPSILON;
+    }
+
+    /**
+     * Returns the shared instance for the curve, creating it on first use.
+     */
+    public static ImmutableCubicBezierInterpolator obtain(float startX, float startY,
+                                                          float endX, float endY)
+            throws IllegalArgumentException {
+        if (startX < 0 || startX > 1) {
+            throw new IllegalArgumentException("startX value must be in the range [0, 1]");
+        }
+        if (endX < 0 || endX > 1) {
+            throw new IllegalArgumentException("endX value must be in the range [0, 1]");
+        }
+        CurveKey key = new CurveKey(startX, startY, endX, endY);
+        ImmutableCubicBezierInterpolator interpolator = sCache.get(key);
+        if (interpolator == null) {
+            ImmutableCubicBezierInterpolator newInterpolator =
+                    new ImmutableCubicBezierInterpolator(startX, startY, endX, endY);
+            interpolator = sCache.putIfAbsent(key, newInterpolator);
+            if (interpolator == null) {
+                interpolator = newInterpolator;
+            }
+        }
+        return interpolator;
+    }
+
+    public static ImmutableCubicBezierInterpolator obtain(double startX, double startY,
+                                                          double endX, double endY) {
+        return obtain((float) startX, (float) startY, (float) endX, (float) endY);
+    }
+
+    @Override
+    public float getInterpolation(float time) {
+        float x = CubicBezierInterpolator.solveCurveX(mAx, mBx, mCx, mSampleValues, mEpsilon, time);
+        return CubicBezierInterpolator.sampleCurve(mAy, mBy, mCy, x);
+    }
+
+    /**
+     * Evaluates times[from, from + len) into out[from, from + len) without allocation.
+     * While times are in ascending order, each solve is warm-started from the previous solution.
+     */
+    public void interpolate(float[] times, float[] out, int from, int len) {
+        CubicBezierInterpolator.checkRange(times, out, from, len);
+        float previousTime = Float.NaN;
+        float x = 0;
+        for (int i = from; i < from + len; i++) {
+            float time = times[i];
+            float guess = time >= previousTime ? x : time;
+            x = CubicBezierInterpolator.solveCurveX(mAx, mBx, mCx, mSampleValues, mEpsilon,
+                    time, guess);
+            out[i] = CubicBezierInterpolator.sampleCurve(mAy, mBy, mCy, x);
+            previousTime = time;
+        }
+    }
+
+    public float getStartX() {
+        return mStartX;
+    }
+
+    public float getStartY() {
+        return mStartY;
+    }
+
+    public float getEndX() {
+        return mEndX;
+    }
+
+    public float getEndY() {
+        return mEndY;
+    }
+
+    private static final class CurveKey {
+        private final float mStartX;
+        private final float mStartY;
+        private final float mEndX;
+        private final float mEndY;
+
+        private CurveKey(float startX, float startY, float endX, float endY) {
+            mStartX = startX;
+            mStartY = startY;
+            mEndX = endX;
+            mEndY = endY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CurveKey)) {
+                return false;
+            }
+            CurveKey other = (CurveKey) o;
+            return Float.floatToIntBits(mStartX) == Float.floatToIntBits(other.mStartX)
+                    && Float.floatToIntBits(mStartY) == Float.floatToIntBits(other.mStartY)
+                    && Float.floatToIntBits(mEndX) == Float.floatToIntBits(other.mEndX)
+                    && Float.floatToIntBits(mEndY) == Float.floatToIntBits(other.mEndY);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(mStartX);
+            result = 31 * result + Float.floatToIntBits(mStartY);
+            result = 31 * result + Float.floatToIntBits(mEndX);
+            result = 31 * result + Float.floatToIntBits(mEndY);
+            return result;
+        }
+    }
+}
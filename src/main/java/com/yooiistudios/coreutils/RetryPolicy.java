@@ -0,0 +1,116 @@
+package com.yooiistudios.coreutils;
+
+import java.util.Random;
+
+/**
+ * RetryPolicy
+ *  How many times and how often DownloadUrlTask retries a failed attempt,
+ *  and the connect/read timeouts of each attempt.
+ *
+ *  The delay before attempt n(n >= 2) is
+ *      min(maxBackoff, initialBackoff * multiplier^(n - 2))
+ *  of which the jitter fraction is randomized, so that clients failing together
+ *  do not retry together.
+ *  The read timeout grows by timeoutMultiplier on each attempt, so a slow but alive server
+ *  eventually gets enough time.
+ *
+ *  Usage:
+ *      RetryPolicy policy = new RetryPolicy(5);
+ *      policy.setBackoff(500, 2, 30 * 1000);
+ *      policy.setTimeouts(5 * 1000, 15 * 1000);
+ *      task.setRetryPolicy(policy);
+ */
+public class RetryPolicy {
+    public static final int DEFAULT_TIMEOUT_MILLI = 7 * 1000;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLI = 1000;
+    public static final float DEFAULT_BACKOFF_MULTIPLIER = 2;
+    public static final long DEFAULT_MAX_BACKOFF_MILLI = 30 * 1000;
+    public static final float DEFAULT_JITTER = .5f;
+
+    private final int mMaxAttemptCount;
+    private long mInitialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLI;
+    private float mBackoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+    private long mMaxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLI;
+    private float mJitter = DEFAULT_JITTER;
+    private int mConnectTimeoutMillis = DEFAULT_TIMEOUT_MILLI;
+    private int mReadTimeoutMillis = DEFAULT_TIMEOUT_MILLI;
+    private float mTimeoutMultiplier = 1;
+
+    /**
+     * @param maxAttemptCount total number of attempts including the first one. 1 disables retry.
+     */
+    public RetryPolicy(int maxAttemptCount) {
+        if (maxAttemptCount < 1) {
+            throw new IllegalArgumentException("maxAttemptCount must be at least 1");
+        }
+        mMaxAttemptCount = maxAttemptCount;
+    }
+
+    public void setBackoff(long initialBackoffMillis, float multiplier, long maxBackoffMillis) {
+        if (initialBackoffMillis < 0 || multiplier < 1 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("Invalid backoff: " + initialBackoffMillis + ", "
+                    + multiplier + ", " + maxBackoffMillis);
+        }
+        mInitialBackoffMillis = initialBackoffMillis;
+        mBackoffMultiplier = multiplier;
+        mMaxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * @param jitter fraction of each delay which is randomized, in the range [0, 1].
+     */
+    public void setJitter(float jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be in the range [0, 1]");
+        }
+        mJitter = jitter;
+    }
+
+    public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        if (connectTimeoutMillis < 0 || readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeouts must not be negative");
+        }
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * @param timeoutMultiplier factor the read timeout is multiplied by on each retry.
+     */
+    public void setTimeoutMultiplier(float timeoutMultiplier) {
+        if (timeoutMultiplier < 1) {
+            throw new IllegalArgumentException("timeoutMultiplier must be at least 1");
+        }
+        mTimeoutMultiplier = timeoutMultiplier;
+    }
+
+    public int getMaxAttemptCount() {
+        return mMaxAttemptCount;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return mConnectTimeoutMillis;
+    }
+
+    /**
+     * @param attempt 1-based attempt number
+     */
+    public int getReadTimeoutMillis(int attempt) {
+        double timeout = mReadTimeoutMillis * Math.pow(mTimeoutMultiplier, attempt - 1);
+        return (int) Math.min(Integer.MAX_VALUE, timeout);
+    }
+
+    /**
+     * @param attempt 1-based number of the attempt about to start
+     * @return delay before the attempt. 0 for the first attempt.
+     */
+    public long getBackoffMillis(int attempt, Random random) {
+        if (attempt <= 1) {
+            return 0;
+        }
+        double backoff = mInitialBackoffMillis * Math.pow(mBackoffMultiplier, attempt - 2);
+        long delay = (long) Math.min(mMaxBackoffMillis, backoff);
+        long jitter = (long) (delay * mJitter);
+        return delay - jitter + (long) (random.nextDouble() * jitter);
+    }
+}
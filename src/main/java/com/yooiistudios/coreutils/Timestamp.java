@@ -2,28 +2,77 @@ package com.yooiistudios.coreutils;
 
 import android.util.Log;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Dongheyon Jeong in News Kit from Yooii Studios Co., LTD. on 15. 3. 26.
  *
  * Timestamp
  *  특정 태그가 시작하고 끝난 시점을 체크하는 유틸
+ *
+ *  Measures with System.nanoTime, so sub-millisecond sections are measured and wall clock
+ *  changes have no effect. Safe to call from any thread.
+ *
+ *  Usage(hot path, no map and no String):
+ *      long handle = Timestamp.begin();
+ *      ...
+ *      long nanos = Timestamp.end(handle);
+ *
+ *  Usage(tags):
+ *      String tag = Timestamp.start(this);
+ *      ...
+ *      Timestamp.end(tag); // logs "[tag]: [ms]" unless setLoggingEnabled(false)
  */
 public class Timestamp {
     // Tag : SwishTimestamp
     public static final String TAG = "Swish" + Timestamp.class.getSimpleName();
-    private static final Map<String, Long> sStartTimes = new HashMap<>();
+    public static final long INVALID_DURATION = -1;
+
+    private static final ConcurrentHashMap<String, Long> sStartTimes = new ConcurrentHashMap<>();
+    private static final AtomicLong sSequence = new AtomicLong();
+    private static volatile boolean sLoggingEnabled = true;
+
+    /**
+     * @param enabled false stops end() and endAndGet() from logging. Durations are returned
+     * anyway.
+     */
+    public static void setLoggingEnabled(boolean enabled) {
+        sLoggingEnabled = enabled;
+    }
+
+    /**
+     * @return handle to pass to end(long). The handle is the start time itself,
+     * so nothing is stored.
+     */
+    public static long begin() {
+        return now();
+    }
+
+    /**
+     * @return nanoseconds elapsed since begin() returned the handle
+     */
+    public static long end(long handle) {
+        return now() - handle;
+    }
+
+    /**
+     * Same as end(long), and logs the duration with the label if logging is enabled.
+     */
+    public static long end(long handle, String label) {
+        long duration = end(handle);
+        log(label, duration);
+        return duration;
+    }
 
     public static String start() {
-        String tag = String.valueOf(now());
+        String tag = String.valueOf(sSequence.incrementAndGet());
         start(tag);
         return tag;
     }
 
     public static String start(Object object) {
-        String tag = object.getClass().getSimpleName() + ": " + System.currentTimeMillis();
+        String tag = object.getClass().getSimpleName() + ": " + sSequence.incrementAndGet();
         start(tag);
         return tag;
     }
@@ -32,19 +81,37 @@ public class Timestamp {
         sStartTimes.put(tag, now());
     }
 
+    /**
+     * Logs the time elapsed since start(tag) if logging is enabled. Does nothing if the tag has
+     * not been started or has already ended.
+     */
     public static void end(String tag) {
-        if (sStartTimes.containsKey(tag)) {
-            Log.d(TAG, tag + ": " + getTimeTaken(tag));
-            sStartTimes.remove(tag);
+        endAndGet(tag);
+    }
+
+    /**
+     * Same as end(String).
+     *
+     * @return nanoseconds elapsed since start(tag), INVALID_DURATION if the tag has not been
+     * started or has already ended.
+     */
+    public static long endAndGet(String tag) {
+        Long startNanos = sStartTimes.remove(tag);
+        if (startNanos == null) {
+            return INVALID_DURATION;
         }
+        long duration = now() - startNanos;
+        log(tag, duration);
+        return duration;
     }
 
-    private static long getTimeTaken(String tag) {
-        long startMilli = sStartTimes.get(tag);
-        return now() - startMilli;
+    private static void log(String label, long durationNanos) {
+        if (sLoggingEnabled) {
+            Log.d(TAG, label + ": " + durationNanos / 1e6 + "ms");
+        }
     }
 
     private static long now() {
-        return System.currentTimeMillis();
+        return System.nanoTime();
     }
 }
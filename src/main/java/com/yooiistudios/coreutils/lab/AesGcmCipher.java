@@ -0,0 +1,151 @@
+package com.yooiistudios.coreutils.lab;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AesGcmCipher
+ *  AES/GCM/NoPadding encryption of byte arrays and ByteBuffers.
+ *
+ *  Output format: [12 bytes random IV][ciphertext][16 bytes tag]
+ *  Every encryption uses a fresh IV, so the IV never has to be set up by the caller.
+ *  (The "no IV set" InvalidKeyException of the old AES/CBC code came from relying on
+ *  the provider to generate one)
+ *
+ *  The key is derived once in the constructor. Cipher instances are created once per thread
+ *  and reused, so an encryption costs an init and a doFinal only.
+ *  Requires API 19+ for GCMParameterSpec.
+ *
+ *  Usage:
+ *      AesGcmCipher cipher = new AesGcmCipher("key".getBytes());
+ *      byte[] encrypted = cipher.encrypt(data);
+ *      byte[] decrypted = cipher.decrypt(encrypted);
+ */
+public class AesGcmCipher {
+    public static final int IV_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA1";
+    private static final SecureRandom sRandom = new SecureRandom();
+    private static final ThreadLocal<Cipher> sCiphers = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(TRANSFORMATION);
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+                throw new IllegalStateException(TRANSFORMATION + " is not supported", e);
+            }
+        }
+    };
+
+    private final SecretKeySpec mKey;
+
+    /**
+     * @param keyBytes padded or truncated to 16 bytes, as CipherUtils does.
+     */
+    public AesGcmCipher(byte[] keyBytes) {
+        mKey = new SecretKeySpec(CipherUtils.toBytesKey(keyBytes), "AES");
+    }
+
+    /**
+     * Derives a 128 bit key from the password with PBKDF2. Slow by design; call once and keep
+     * the instance.
+     */
+    public static AesGcmCipher fromPassword(char[] password, byte[] salt, int iterationCount)
+            throws GeneralSecurityException {
+        KeySpec keySpec = new PBEKeySpec(password, salt, iterationCount,
+                CipherUtils.KEY_LENGTH_IN_BYTES * 8);
+        byte[] keyBytes = SecretKeyFactory.getInstance(KDF_ALGORITHM)
+                .generateSecret(keySpec).getEncoded();
+        return new AesGcmCipher(keyBytes);
+    }
+
+    public static int getEncryptedLength(int plainLength) {
+        return IV_LENGTH + plainLength + TAG_LENGTH;
+    }
+
+    public byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+        byte[] iv = newIv();
+        Cipher cipher = init(Cipher.ENCRYPT_MODE, iv, null);
+        byte[] encrypted = new byte[getEncryptedLength(plain.length)];
+        System.arraycopy(iv, 0, encrypted, 0, IV_LENGTH);
+        cipher.doFinal(plain, 0, plain.length, encrypted, IV_LENGTH);
+        return encrypted;
+    }
+
+    /**
+     * @throws javax.crypto.AEADBadTagException if the data has been tampered with or the key
+     * is wrong.
+     */
+    public byte[] decrypt(byte[] encrypted) throws GeneralSecurityException {
+        if (encrypted.length < IV_LENGTH + TAG_LENGTH) {
+            throw new GeneralSecurityException("Too short: " + encrypted.length);
+        }
+        Cipher cipher = init(Cipher.DECRYPT_MODE, encrypted, 0, null);
+        return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+    }
+
+    /**
+     * Encrypts the remaining bytes of input into output without intermediate arrays.
+     * output needs getEncryptedLength(input.remaining()) bytes remaining.
+     *
+     * @return number of bytes written into output
+     */
+    public int encrypt(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        byte[] iv = newIv();
+        Cipher cipher = init(Cipher.ENCRYPT_MODE, iv, null);
+        output.put(iv);
+        return IV_LENGTH + cipher.doFinal(input, output);
+    }
+
+    /**
+     * Decrypts the remaining bytes of input into output without intermediate arrays.
+     * output needs input.remaining() - IV_LENGTH - TAG_LENGTH bytes remaining.
+     *
+     * @return number of bytes written into output
+     */
+    public int decrypt(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+        if (input.remaining() < IV_LENGTH + TAG_LENGTH) {
+            throw new GeneralSecurityException("Too short: " + input.remaining());
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        input.get(iv);
+        return init(Cipher.DECRYPT_MODE, iv, null).doFinal(input, output);
+    }
+
+    static byte[] newIv() {
+        byte[] iv = new byte[IV_LENGTH];
+        sRandom.nextBytes(iv);
+        return iv;
+    }
+
+    /**
+     * Initializes the Cipher of the current thread.
+     *
+     * @param aad additional authenticated data, null if none
+     */
+    Cipher init(int mode, byte[] iv, byte[] aad) throws GeneralSecurityException {
+        return init(mode, iv, 0, aad);
+    }
+
+    private Cipher init(int mode, byte[] iv, int ivOffset, byte[] aad)
+            throws GeneralSecurityException {
+        Cipher cipher = sCiphers.get();
+        cipher.init(mode, mKey, new GCMParameterSpec(TAG_LENGTH * 8, iv, ivOffset, IV_LENGTH));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        return cipher;
+    }
+}
@@ -0,0 +1,171 @@
+package com.yooiistudios.coreutils.lab;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * ChunkedCipherFile
+ *  Random access reader of data written by ChunkedCipherOutputStream.
+ *
+ *  Format:
+ *      [4 bytes magic "YCC1"][4 bytes chunk size][12 bytes base IV]
+ *      [chunk 0][chunk 1]...[chunk n - 1]
+ *  Each chunk is the AES-GCM ciphertext of chunk size plain bytes(the last one may be shorter,
+ *  even empty) followed by its 16 bytes tag.
+ *  Chunk i is encrypted with IV = base IV XOR i(in the last 8 bytes) and authenticates
+ *  [8 bytes i][1 byte final flag] as additional data. So chunks can be neither reordered nor
+ *  dropped from the end without failing the decryption.
+ *
+ *  Any chunk can be decrypted on its own, without reading the chunks before it.
+ *
+ *  Usage:
+ *      ChunkedCipherFile file = new ChunkedCipherFile(encryptedFile, cipher);
+ *      byte[] chunk = file.readChunk(file.getChunkCount() / 2);
+ *      file.close();
+ */
+public class ChunkedCipherFile implements Closeable {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final int MAGIC = 0x59434331; // "YCC1"
+    static final int HEADER_LENGTH = 4 + 4 + AesGcmCipher.IV_LENGTH;
+    private static final int AAD_LENGTH = 8 + 1;
+
+    private final AesGcmCipher mCipher;
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mChunkSize;
+    private final byte[] mBaseIv = new byte[AesGcmCipher.IV_LENGTH];
+    private final long mChunkCount;
+    private final long mPlainLength;
+
+    public ChunkedCipherFile(File file, AesGcmCipher cipher) throws IOException {
+        mCipher = cipher;
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(mChannel, header, 0);
+            header.flip();
+            mChunkSize = readHeader(header, mBaseIv);
+
+            long encryptedLength = mChannel.size() - HEADER_LENGTH;
+            long encryptedChunkSize = mChunkSize + AesGcmCipher.TAG_LENGTH;
+            mChunkCount = (encryptedLength + encryptedChunkSize - 1) / encryptedChunkSize;
+            if (mChunkCount == 0
+                    || encryptedLength - (mChunkCount - 1) * encryptedChunkSize
+                    < AesGcmCipher.TAG_LENGTH) {
+                throw new IOException("Truncated");
+            }
+            mPlainLength = encryptedLength - mChunkCount * AesGcmCipher.TAG_LENGTH;
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public long getChunkCount() {
+        return mChunkCount;
+    }
+
+    public long getPlainLength() {
+        return mPlainLength;
+    }
+
+    public byte[] readChunk(long index) throws IOException {
+        ByteBuffer output = ByteBuffer.allocate(getPlainChunkLength(index));
+        readChunk(index, output);
+        return output.array();
+    }
+
+    /**
+     * Decrypts the chunk into output, which needs getChunkSize() bytes remaining at most.
+     *
+     * @return number of bytes written into output
+     */
+    public int readChunk(long index, ByteBuffer output) throws IOException {
+        int plainChunkLength = getPlainChunkLength(index);
+        ByteBuffer input = ByteBuffer.allocate(plainChunkLength + AesGcmCipher.TAG_LENGTH);
+        readFully(mChannel, input,
+                HEADER_LENGTH + index * (mChunkSize + AesGcmCipher.TAG_LENGTH));
+        input.flip();
+        try {
+            Cipher cipher = mCipher.init(Cipher.DECRYPT_MODE, getChunkIv(mBaseIv, index),
+                    getChunkAad(index, index == mChunkCount - 1));
+            return cipher.doFinal(input, output);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + index + " is corrupted", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private int getPlainChunkLength(long index) {
+        if (index < 0 || index >= mChunkCount) {
+            throw new IndexOutOfBoundsException("index: " + index + ", chunkCount: " + mChunkCount);
+        }
+        return (int) Math.min(mChunkSize, mPlainLength - index * mChunkSize);
+    }
+
+    /**
+     * Reads the header into baseIv.
+     *
+     * @return chunk size
+     */
+    static int readHeader(ByteBuffer header, byte[] baseIv) throws IOException {
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a chunked cipher file");
+        }
+        int chunkSize = header.getInt();
+        if (chunkSize <= 0) {
+            throw new IOException("Invalid chunk size: " + chunkSize);
+        }
+        header.get(baseIv);
+        return chunkSize;
+    }
+
+    static byte[] createHeader(int chunkSize, byte[] baseIv) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(chunkSize).put(baseIv);
+        return header.array();
+    }
+
+    static byte[] getChunkIv(byte[] baseIv, long index) {
+        byte[] iv = baseIv.clone();
+        for (int i = 0; i < 8; i++) {
+            iv[iv.length - 1 - i] ^= (byte) (index >>> (i * 8));
+        }
+        return iv;
+    }
+
+    static byte[] getChunkAad(long index, boolean isFinal) {
+        ByteBuffer aad = ByteBuffer.allocate(AAD_LENGTH);
+        aad.putLong(index).put((byte) (isFinal ? 1 : 0));
+        return aad.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead == -1) {
+                throw new EOFException();
+            }
+            position += bytesRead;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.yooiistudios.coreutils.lab;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * ChunkedCipherInputStream
+ *  Decrypts data written by ChunkedCipherOutputStream, holding a single chunk in memory
+ *  at a time. Each chunk is authenticated before any of its bytes is returned.
+ *  Throws IOException if the data has been tampered with or truncated.
+ */
+public class ChunkedCipherInputStream extends FilterInputStream {
+    private final AesGcmCipher mCipher;
+    private final byte[] mBaseIv = new byte[AesGcmCipher.IV_LENGTH];
+    private final byte[] mEncryptedChunk;
+    private final byte[] mPlainChunk;
+    private int mPlainLength = 0;
+    private int mPlainPosition = 0;
+    private long mChunkIndex = 0;
+    private boolean mFinished = false;
+
+    /**
+     * Next byte after the chunk being decrypted, read to find out whether it is the last one.
+     * -1 if none.
+     */
+    private int mLookahead = -1;
+
+    public ChunkedCipherInputStream(InputStream in, AesGcmCipher cipher) throws IOException {
+        super(in);
+        mCipher = cipher;
+        byte[] header = new byte[ChunkedCipherFile.HEADER_LENGTH];
+        if (readFully(header, 0, header.length) < header.length) {
+            throw new EOFException("Truncated header");
+        }
+        int chunkSize = ChunkedCipherFile.readHeader(ByteBuffer.wrap(header), mBaseIv);
+        mEncryptedChunk = new byte[chunkSize + AesGcmCipher.TAG_LENGTH];
+        mPlainChunk = new byte[chunkSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (mPlainPosition == mPlainLength) {
+            if (mFinished) {
+                return -1;
+            }
+            readChunk();
+        }
+        int count = Math.min(len, mPlainLength - mPlainPosition);
+        System.arraycopy(mPlainChunk, mPlainPosition, b, off, count);
+        mPlainPosition += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        int count;
+        while (skipped < n
+                && (count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1) {
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return mPlainLength - mPlainPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void readChunk() throws IOException {
+        int length = 0;
+        if (mLookahead != -1) {
+            mEncryptedChunk[length++] = (byte) mLookahead;
+        }
+        length += readFully(mEncryptedChunk, length, mEncryptedChunk.length - length);
+        mLookahead = length == mEncryptedChunk.length ? in.read() : -1;
+        boolean isFinal = mLookahead == -1;
+        if (length < AesGcmCipher.TAG_LENGTH) {
+            throw new EOFException("Truncated");
+        }
+
+        try {
+            Cipher cipher = mCipher.init(Cipher.DECRYPT_MODE,
+                    ChunkedCipherFile.getChunkIv(mBaseIv, mChunkIndex),
+                    ChunkedCipherFile.getChunkAad(mChunkIndex, isFinal));
+            mPlainLength = cipher.doFinal(mEncryptedChunk, 0, length, mPlainChunk, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chunk " + mChunkIndex + " is corrupted", e);
+        }
+        mPlainPosition = 0;
+        mChunkIndex++;
+        mFinished = isFinal;
+    }
+
+    /**
+     * @return number of bytes read, less than len only at the end of the stream
+     */
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int count = in.read(b, off + total, len - total);
+            if (count == -1) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,107 @@
+package com.yooiistudios.coreutils.lab;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * ChunkedCipherOutputStream
+ *  Encrypts everything written into chunks of the format described in ChunkedCipherFile,
+ *  holding a single chunk in memory at a time.
+ *
+ *  finish() or close() must be called to write the last chunk. Without it, the data cannot be
+ *  decrypted since its last chunk is missing.
+ *
+ *  Usage:
+ *      OutputStream out = new ChunkedCipherOutputStream(new FileOutputStream(file), cipher);
+ *      out.write(data);
+ *      out.close();
+ */
+public class ChunkedCipherOutputStream extends FilterOutputStream {
+    private final AesGcmCipher mCipher;
+    private final byte[] mBaseIv;
+    private final byte[] mPlainChunk;
+    private final byte[] mEncryptedChunk;
+    private int mPlainLength = 0;
+    private long mChunkIndex = 0;
+    private boolean mFinished = false;
+
+    public ChunkedCipherOutputStream(OutputStream out, AesGcmCipher cipher) throws IOException {
+        this(out, cipher, ChunkedCipherFile.DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedCipherOutputStream(OutputStream out, AesGcmCipher cipher, int chunkSize)
+            throws IOException {
+        super(out);
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        mCipher = cipher;
+        mBaseIv = AesGcmCipher.newIv();
+        mPlainChunk = new byte[chunkSize];
+        mEncryptedChunk = new byte[chunkSize + AesGcmCipher.TAG_LENGTH];
+        out.write(ChunkedCipherFile.createHeader(chunkSize, mBaseIv));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mFinished) {
+            throw new IOException("Already finished");
+        }
+        while (len > 0) {
+            // A full chunk is written only when more data follows, since the last chunk is
+            // marked as final.
+            if (mPlainLength == mPlainChunk.length) {
+                writeChunk(false);
+            }
+            int count = Math.min(len, mPlainChunk.length - mPlainLength);
+            System.arraycopy(b, off, mPlainChunk, mPlainLength, count);
+            mPlainLength += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Writes the last chunk without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        writeChunk(true);
+        mFinished = true;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeChunk(boolean isFinal) throws IOException {
+        try {
+            Cipher cipher = mCipher.init(Cipher.ENCRYPT_MODE,
+                    ChunkedCipherFile.getChunkIv(mBaseIv, mChunkIndex),
+                    ChunkedCipherFile.getChunkAad(mChunkIndex, isFinal));
+            int length = cipher.doFinal(mPlainChunk, 0, mPlainLength, mEncryptedChunk, 0);
+            out.write(mEncryptedChunk, 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+        mPlainLength = 0;
+        mChunkIndex++;
+    }
+}
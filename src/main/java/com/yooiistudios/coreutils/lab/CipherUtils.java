@@ -1,5 +1,9 @@
 package com.yooiistudios.coreutils.lab;
 
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Created by Dongheyon Jeong in AndroidPlayground from Yooii Studios Co., LTD. on 15. 8. 24.
  *
@@ -16,91 +20,160 @@ package com.yooiistudios.coreutils.lab;
  *
  *  2. Decrypt
  *      String originalData = CipherUtils.bytesToData(keyBytes, ENCRYPTED);
+ *
+ *  Constants can be encrypted at build time instead. See Obfuscate.
+ *
+ *  Strings are encoded in UTF-8 regardless of the platform charset, and swapped as bytes,
+ *  so non-ASCII data survives the round trip. Output for ASCII data is the same as before.
+ *
+ *  This only obfuscates. Use AesGcmCipher to encrypt data.
  */
 // FIXME: Overhaul required
 public class CipherUtils {
     private static final int DEFAULT_SWAP_COUNT = 5;
-    private static final int KEY_LENGTH_IN_BYTES = 16;
+    static final int KEY_LENGTH_IN_BYTES = 16;
     private static final byte PADDING = "0".getBytes()[0];
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_CACHED_PERMUTATION_COUNT = 256;
+    private static final ConcurrentHashMap<Permutation, Permutation> sPermutations =
+            new ConcurrentHashMap<>();
+    private static volatile Permutation sLastPermutation;
 
     private CipherUtils() {
         throw new AssertionError("You MUST NOT create the instance of this class!!");
     }
 
     public static String dataToBytesRepresentation(String key, String data) {
-        String swappedData = swap(key.getBytes(), data, 5);
-//        byte[] encrypted = encrypt(key.getBytes(), swappedData.getBytes());
-        return toArrayRepresentation(swappedData.getBytes());
+        byte[] swappedData = swap(key.getBytes(UTF_8), data.getBytes(UTF_8));
+        return toArrayRepresentation(swappedData);
     }
 
     public static String bytesToData(String key, byte[] bytes) {
-//        byte[] decrypted = CipherUtils.decrypt(key.getBytes(), bytes);
-        return CipherUtils.unswap(key.getBytes(), new String(bytes), 5);
+        // Unswaps a copy, since bytes is usually a constant array
+        return new String(CipherUtils.unswap(key.getBytes(UTF_8), bytes.clone()), UTF_8);
     }
 
-    // TODO: Error found on 4.1.1 GS3(java.security.InvalidKeyException: no IV set when one expected)
-//    private static byte[] encrypt(byte[] key, byte[] clear) throws Exception {
-//        SecretKeySpec skeySpec = new SecretKeySpec(toBytesKey(key), "AES");
-//        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-//        cipher.init(Cipher.ENCRYPT_MODE, skeySpec);
-//        return cipher.doFinal(clear);
-//    }
-//
-//    private static byte[] decrypt(byte[] key, byte[] encrypted) throws Exception {
-//        SecretKeySpec skeySpec = new SecretKeySpec(toBytesKey(key), "AES");
-//        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-//        cipher.init(Cipher.DECRYPT_MODE, skeySpec);
-//        return cipher.doFinal(encrypted);
-//    }
-
-    private static String swap(byte[] keyBytes, String data) {
+    /**
+     * Swaps data in place with DEFAULT_SWAP_COUNT rounds.
+     *
+     * @return data
+     */
+    public static byte[] swap(byte[] keyBytes, byte[] data) {
         return swap(keyBytes, data, DEFAULT_SWAP_COUNT);
     }
 
-    private static String swap(byte[] keyBytes, String data, int count) {
-        String swapped = data;
-        for (int i = 0; i < count; i++) {
-            swapped = _swap(keyBytes, swapped);
-        }
-        return swapped;
+    /**
+     * Reverts swap(keyBytes, data) in place.
+     *
+     * @return data
+     */
+    public static byte[] unswap(byte[] keyBytes, byte[] data) {
+        return unswap(keyBytes, data, DEFAULT_SWAP_COUNT);
     }
 
-    private static String _swap(byte[] keyBytes, String data) {
-        byte[] targetBytes = data.getBytes();
-        byte tempByte;
-        for (byte keyByte : keyBytes) {
-            int fromIndex = byteToInt(keyByte) % data.length();
-            tempByte = targetBytes[0];
-            targetBytes[0] = targetBytes[fromIndex];
-            targetBytes[fromIndex] = tempByte;
-        }
+    /*
+    * Implementation Note
+    * Each key byte selects the index swapped with the first byte, for every round. All of these
+    * swaps together form one permutation of the data, which depends on the key, the data length
+    * and the round count only. It is computed once, stored as its cycles and cached, so each
+    * call moves every byte at most once. The last used permutation is checked before the cache,
+    * so decoding with the same key and length again allocates nothing.
+    *
+    * Cycles are stored back to back, each one as its length followed by its indices.
+    * Swapping moves every byte of a cycle one position back, unswapping one position forward.
+    */
 
-        return new String(targetBytes);
+    private static byte[] swap(byte[] keyBytes, byte[] data, int count) {
+        if (data.length < 2) {
+            return data;
+        }
+        int[] cycles = obtainPermutation(keyBytes, data.length, count);
+        int i = 0;
+        while (i < cycles.length) {
+            int start = i + 1;
+            int end = i + cycles[i];
+            byte first = data[cycles[start]];
+            for (int j = start; j < end; j++) {
+                data[cycles[j]] = data[cycles[j + 1]];
+            }
+            data[cycles[end]] = first;
+            i = end + 1;
+        }
+        return data;
     }
 
-    private static String unswap(byte[] keyBytes, String data) {
-        return unswap(keyBytes, data, DEFAULT_SWAP_COUNT);
+    private static byte[] unswap(byte[] keyBytes, byte[] data, int count) {
+        if (data.length < 2) {
+            return data;
+        }
+        int[] cycles = obtainPermutation(keyBytes, data.length, count);
+        int i = 0;
+        while (i < cycles.length) {
+            int start = i + 1;
+            int end = i + cycles[i];
+            byte last = data[cycles[end]];
+            for (int j = end; j > start; j--) {
+                data[cycles[j]] = data[cycles[j - 1]];
+            }
+            data[cycles[start]] = last;
+            i = end + 1;
+        }
+        return data;
     }
 
-    private static String unswap(byte[] keyBytes, String data, int count) {
-        String swapped = data;
-        for (int i = 0; i < count; i++) {
-            swapped = _unswap(keyBytes, swapped);
+    private static int[] obtainPermutation(byte[] keyBytes, int dataLength, int count) {
+        Permutation permutation = sLastPermutation;
+        if (permutation != null && permutation.matches(keyBytes, dataLength, count)) {
+            return permutation.mCycles;
+        }
+        Permutation lookup = new Permutation(keyBytes, dataLength, count, null);
+        permutation = sPermutations.get(lookup);
+        if (permutation == null) {
+            permutation = new Permutation(keyBytes.clone(), dataLength, count,
+                    createPermutation(keyBytes, dataLength, count));
+            // Keys are usually constants, but do not grow without bound on arbitrary input
+            if (sPermutations.size() < MAX_CACHED_PERMUTATION_COUNT) {
+                sPermutations.putIfAbsent(permutation, permutation);
+            }
         }
-        return swapped;
+        sLastPermutation = permutation;
+        return permutation.mCycles;
     }
 
-    private static String _unswap(byte[] keyBytes, String data) {
-        byte[] targetBytes = data.getBytes();
-        byte tempByte;
-        for (int i = keyBytes.length - 1; i >= 0; i--) {
-            int fromIndex = byteToInt(keyBytes[i]) % data.length();
-            tempByte = targetBytes[0];
-            targetBytes[0] = targetBytes[fromIndex];
-            targetBytes[fromIndex] = tempByte;
+    /**
+     * Returns the cycles of the permutation done by swap, which moves data[sources[i]] to i.
+     */
+    private static int[] createPermutation(byte[] keyBytes, int dataLength, int count) {
+        int[] sources = new int[dataLength];
+        for (int i = 0; i < dataLength; i++) {
+            sources[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            for (byte keyByte : keyBytes) {
+                int index = byteToInt(keyByte) % dataLength;
+                int temp = sources[0];
+                sources[0] = sources[index];
+                sources[index] = temp;
+            }
         }
 
-        return new String(targetBytes);
+        int[] cycles = new int[dataLength + dataLength / 2];
+        int cyclesLength = 0;
+        boolean[] visited = new boolean[dataLength];
+        for (int i = 0; i < dataLength; i++) {
+            if (visited[i] || sources[i] == i) {
+                continue;
+            }
+            int lengthIndex = cyclesLength++;
+            int j = i;
+            while (!visited[j]) {
+                visited[j] = true;
+                cycles[cyclesLength++] = j;
+                j = sources[j];
+            }
+            cycles[lengthIndex] = cyclesLength - lengthIndex - 1;
+        }
+        return Arrays.copyOf(cycles, cyclesLength);
     }
 
     private static String toArrayRepresentation(byte[] bytes) {
@@ -123,7 +196,7 @@ public class CipherUtils {
         return sb.toString();
     }
 
-    private static byte[] toBytesKey(byte[] originalKeyBytes) {
+    static byte[] toBytesKey(byte[] originalKeyBytes) {
         int originalKeyByteLength = originalKeyBytes.length;
         if (originalKeyByteLength == KEY_LENGTH_IN_BYTES) {
             return originalKeyBytes;
@@ -144,4 +217,46 @@ public class CipherUtils {
     private static int byteToInt(byte value) {
         return value & 0xff;
     }
+
+    /**
+     * Cycles of a permutation, identified by the key bytes, data length and round count.
+     */
+    private static final class Permutation {
+        private final byte[] mKeyBytes;
+        private final int mDataLength;
+        private final int mCount;
+        private final int[] mCycles;
+
+        private Permutation(byte[] keyBytes, int dataLength, int count, int[] cycles) {
+            mKeyBytes = keyBytes;
+            mDataLength = dataLength;
+            mCount = count;
+            mCycles = cycles;
+        }
+
+        private boolean matches(byte[] keyBytes, int dataLength, int count) {
+            return mDataLength == dataLength && mCount == count
+                    && Arrays.equals(mKeyBytes, keyBytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Permutation)) {
+                return false;
+            }
+            Permutation other = (Permutation) o;
+            return matches(other.mKeyBytes, other.mDataLength, other.mCount);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(mKeyBytes);
+            result = 31 * result + mDataLength;
+            result = 31 * result + mCount;
+            return result;
+        }
+    }
 }
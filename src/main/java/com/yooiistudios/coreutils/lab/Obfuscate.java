@@ -0,0 +1,29 @@
+package com.yooiistudios.coreutils.lab;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Obfuscate
+ *  Marks a String constant to be obfuscated at build time.
+ *
+ *  Declare constants in a class under src/main/obfuscated(which is not compiled):
+ *      package com.example;
+ *
+ *      public class Endpoints {
+ *          @Obfuscate public static final String API_URL = "https://api.example.com";
+ *      }
+ *
+ *  generateObfuscatedConstants task(obfuscation.gradle) replaces the class with one holding
+ *  the constants swapped by CipherUtils, decoded once on first access:
+ *      String url = Endpoints.getApiUrl();
+ *
+ *  Other members of the class are not carried over, so the task fails if there are any.
+ *  The key is the "obfuscationKey" project property, which must be set.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Obfuscate {
+}
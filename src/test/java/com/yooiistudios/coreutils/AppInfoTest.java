@@ -0,0 +1,113 @@
+package com.yooiistudios.coreutils;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AppInfoTest {
+    private static final String PACKAGE_NAME = "com.yooiistudios.sample";
+
+    private Context mContext;
+    private PackageManager mPackageManager;
+    private PackageInfo mPackageInfo;
+
+    @Before
+    public void setUp() throws Exception {
+        AppInfo.clearSnapshot();
+        mPackageInfo = new PackageInfo();
+        mPackageInfo.packageName = PACKAGE_NAME;
+        mPackageInfo.versionCode = 15;
+        mPackageInfo.versionName = "1.0.15";
+        mPackageInfo.firstInstallTime = 1000;
+        mPackageInfo.lastUpdateTime = 2000;
+
+        mPackageManager = mock(PackageManager.class);
+        when(mPackageManager.getPackageInfo(anyString(), anyInt())).thenReturn(mPackageInfo);
+        mContext = mock(Context.class);
+        when(mContext.getPackageName()).thenReturn(PACKAGE_NAME);
+        when(mContext.getPackageManager()).thenReturn(mPackageManager);
+    }
+
+    @After
+    public void tearDown() {
+        AppInfo.clearSnapshot();
+    }
+
+    @Test
+    public void packageManagerIsQueriedOnce() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(15, AppInfo.getVersionCode(mContext));
+            assertEquals("1.0.15", AppInfo.getVersionName(mContext));
+        }
+        AppInfo.Snapshot snapshot = AppInfo.getSnapshot(mContext);
+        assertEquals(PACKAGE_NAME, snapshot.getPackageName());
+        assertEquals(1000, snapshot.getFirstInstallTime());
+        assertEquals(2000, snapshot.getLastUpdateTime());
+
+        verify(mPackageManager, times(1)).getPackageInfo(anyString(), anyInt());
+    }
+
+    @Test
+    public void concurrentFirstReadsQueryOnce() throws Exception {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final AppInfo.Snapshot[] snapshots = new AppInfo.Snapshot[8];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < snapshots.length; i++) {
+            final int index = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startSignal.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    snapshots[index] = AppInfo.getSnapshot(mContext);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (AppInfo.Snapshot snapshot : snapshots) {
+            assertSame(snapshots[0], snapshot);
+        }
+        verify(mPackageManager, times(1)).getPackageInfo(anyString(), anyInt());
+    }
+
+    @Test
+    public void failureIsNotCached() throws Exception {
+        when(mPackageManager.getPackageInfo(anyString(), anyInt()))
+                .thenThrow(new PackageManager.NameNotFoundException())
+                .thenReturn(mPackageInfo);
+
+        AppInfo.Snapshot invalidSnapshot = AppInfo.getSnapshot(mContext);
+        assertEquals(AppInfo.INVALID_VERSION_CODE, invalidSnapshot.getVersionCode());
+        assertEquals("", invalidSnapshot.getVersionName());
+        assertEquals(15, AppInfo.getVersionCode(mContext));
+        assertEquals("1.0.15", AppInfo.getVersionName(mContext));
+
+        verify(mPackageManager, times(2)).getPackageInfo(anyString(), anyInt());
+    }
+}
@@ -0,0 +1,106 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Counts the connections accepted by the server for a batch, which stays at one as long as every
+ * body is drained and the socket goes back to the keep-alive pool.
+ */
+public class BatchDownloadTaskTest {
+    private static final int URL_COUNT = 50;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private byte[] mBody;
+
+    @Before
+    public void setUp() throws Exception {
+        mBody = createBody(1, 20 * 1024);
+        mServer = new TestHttpServer();
+        mServer.setBody(mBody);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void batchReusesSingleConnection() throws Exception {
+        File[] destFiles = createDestFiles();
+        BatchDownloadTask task = new BatchDownloadTask(createUrls(), destFiles, null);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertEquals(URL_COUNT, mServer.getRequestCount());
+        assertEquals(1, mServer.getConnectionCount());
+        for (File destFile : destFiles) {
+            assertArrayEquals(mBody, readFile(destFile));
+        }
+    }
+
+    @Test
+    public void errorBodiesAreDrainedForReuse() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mServer.addErrorResponse(404);
+            mServer.addErrorResponse(503);
+        }
+        File[] destFiles = createDestFiles();
+        BatchDownloadTask task = new BatchDownloadTask(createUrls(), destFiles, null);
+
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertEquals(URL_COUNT, mServer.getRequestCount());
+        assertEquals(1, mServer.getConnectionCount());
+        for (int i = 0; i < URL_COUNT; i++) {
+            if (i < 10) {
+                assertFalse(destFiles[i].exists());
+            } else {
+                assertArrayEquals(mBody, readFile(destFiles[i]));
+            }
+        }
+    }
+
+    @Test
+    public void truncatedBodyFailsItsUrl() throws Exception {
+        mServer.addStall(0, 1);
+        mServer.addReset(mBody.length / 2);
+        File[] destFiles = createDestFiles();
+        BatchDownloadTask task = new BatchDownloadTask(createUrls(), destFiles, null);
+
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertArrayEquals(mBody, readFile(destFiles[0]));
+        assertFalse(destFiles[1].exists());
+        for (int i = 2; i < URL_COUNT; i++) {
+            assertArrayEquals(mBody, readFile(destFiles[i]));
+        }
+    }
+
+    private String[] createUrls() {
+        String[] urls = new String[URL_COUNT];
+        for (int i = 0; i < URL_COUNT; i++) {
+            urls[i] = mServer.getUrl("/thumbnail/" + i);
+        }
+        return urls;
+    }
+
+    private File[] createDestFiles() {
+        File[] destFiles = new File[URL_COUNT];
+        for (int i = 0; i < URL_COUNT; i++) {
+            destFiles[i] = new File(mTemporaryFolder.getRoot(), "thumbnail" + i);
+        }
+        return destFiles;
+    }
+}
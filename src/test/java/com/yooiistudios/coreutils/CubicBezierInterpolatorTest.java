@@ -0,0 +1,251 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the sampled mode against an exact(double precision bisection) solver.
+ * Uses the static solver and ImmutableCubicBezierInterpolator, since android.graphics.PointF
+ * has no implementation in local unit tests.
+ */
+public class CubicBezierInterpolatorTest {
+    private static final float[][] CURVES = {
+            { .25f, .1f, .25f, 1 },         // ease
+            { .42f, 0, 1, 1 },              // ease-in
+            { 0, 0, .58f, 1 },              // ease-out
+            { .42f, 0, .58f, 1 },           // ease-in-out
+            { .4f, 0, .2f, 1 },             // material standard
+            { .68f, -.55f, .265f, 1.55f },  // back
+            { 0, 0, 1, 1 },                 // linear
+            { 1, 0, 0, 1 },                 // x' == 0 at t == .5
+    };
+    private static final int[] SAMPLE_SIZES =
+            { 2, CubicBezierInterpolator.DEFAULT_SAMPLE_SIZE, 101 };
+    private static final float[] EPSILONS = { CubicBezierInterpolator.DEFAULT_EPSILON, 1e-5f };
+    private static final int POINT_COUNT = 10000;
+    // The solver measures its error in float
+    private static final double FLOAT_TOLERANCE = 1e-6;
+
+    @Test
+    public void sampledModeStaysWithinEpsilonOfExactSolver() {
+        for (float[] curve : CURVES) {
+            float ax = CubicBezierInterpolator.getCoefficientA(curve[0], curve[2]);
+            float bx = CubicBezierInterpolator.getCoefficientB(curve[0], curve[2]);
+            float cx = CubicBezierInterpolator.getCoefficientC(curve[0]);
+            for (int sampleSize : SAMPLE_SIZES) {
+                for (float epsilon : EPSILONS) {
+                    float[] sampleValues =
+                            CubicBezierInterpolator.createSampleValues(ax, bx, cx, sampleSize);
+                    for (int i = 0; i <= POINT_COUNT; i++) {
+                        float x = (float) i / POINT_COUNT;
+                        float t = CubicBezierInterpolator.solveCurveX(ax, bx, cx, sampleValues,
+                                epsilon, x);
+                        double exactT = solveExactly(curve, x);
+
+                        double xError = Math.abs(curve(curve[0], curve[2], t) - x);
+                        double yError = Math.abs(curve(curve[1], curve[3], t)
+                                - curve(curve[1], curve[3], exactT));
+
+                        String message = describe(curve, sampleSize, epsilon, x);
+                        assertTrue(message + " x error: " + xError,
+                                xError <= epsilon + FLOAT_TOLERANCE);
+                        assertTrue(message + " y error: " + yError, yError
+                                <= (epsilon + FLOAT_TOLERANCE) * getSlopeBound(curve, t, exactT));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void immutableInterpolatorUsesDefaultTable() {
+        for (float[] curve : CURVES) {
+            ImmutableCubicBezierInterpolator interpolator = ImmutableCubicBezierInterpolator.obtain(
+                    curve[0], curve[1], curve[2], curve[3]);
+            float ax = CubicBezierInterpolator.getCoefficientA(curve[0], curve[2]);
+            float bx = CubicBezierInterpolator.getCoefficientB(curve[0], curve[2]);
+            float cx = CubicBezierInterpolator.getCoefficientC(curve[0]);
+            float[] sampleValues = CubicBezierInterpolator.createSampleValues(ax, bx, cx,
+                    CubicBezierInterpolator.DEFAULT_SAMPLE_SIZE);
+            for (int i = 0; i <= POINT_COUNT; i++) {
+                float x = (float) i / POINT_COUNT;
+                float t = CubicBezierInterpolator.solveCurveX(ax, bx, cx, sampleValues,
+                        CubicBezierInterpolator.DEFAULT_EPSILON, x);
+                float expected = CubicBezierInterpolator.sampleCurve(
+                        CubicBezierInterpolator.getCoefficientA(curve[1], curve[3]),
+                        CubicBezierInterpolator.getCoefficientB(curve[1], curve[3]),
+                        CubicBezierInterpolator.getCoefficientC(curve[1]), t);
+                assertEquals(expected, interpolator.getInterpolation(x), 0);
+            }
+        }
+    }
+
+    @Test
+    public void endpointsAreExact() {
+        for (float[] curve : CURVES) {
+            ImmutableCubicBezierInterpolator interpolator = ImmutableCubicBezierInterpolator.obtain(
+                    curve[0], curve[1], curve[2], curve[3]);
+            assertEquals(0, interpolator.getInterpolation(0), 0);
+            assertEquals(1, interpolator.getInterpolation(1), 0);
+        }
+    }
+
+    @Test
+    public void batchMatchesGetInterpolationInAscendingOrder() {
+        float[] times = new float[POINT_COUNT + 1];
+        for (int i = 0; i <= POINT_COUNT; i++) {
+            times[i] = (float) i / POINT_COUNT;
+        }
+        assertBatchMatchesGetInterpolation(times);
+    }
+
+    /**
+     * Descending and shuffled times fall back to a cold start at every time the order breaks.
+     */
+    @Test
+    public void batchMatchesGetInterpolationInAnyOrder() {
+        float[] descending = new float[POINT_COUNT + 1];
+        for (int i = 0; i <= POINT_COUNT; i++) {
+            descending[i] = 1 - (float) i / POINT_COUNT;
+        }
+        assertBatchMatchesGetInterpolation(descending);
+
+        Random random = new Random(3);
+        float[] shuffled = new float[POINT_COUNT];
+        for (int i = 0; i < POINT_COUNT; i++) {
+            // Out of [0, 1] as well, which is clamped
+            shuffled[i] = random.nextFloat() * 1.2f - .1f;
+        }
+        assertBatchMatchesGetInterpolation(shuffled);
+    }
+
+    @Test
+    public void batchWritesOnlyTheRange() {
+        float[] curve = CURVES[4];
+        ImmutableCubicBezierInterpolator interpolator = ImmutableCubicBezierInterpolator.obtain(
+                curve[0], curve[1], curve[2], curve[3]);
+        float[] times = { .1f, .2f, .3f, .4f, .5f };
+        float[] out = new float[times.length];
+        Arrays.fill(out, -1);
+
+        interpolator.interpolate(times, out, 1, 3);
+
+        assertEquals(-1, out[0], 0);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(interpolator.getInterpolation(times[i]), out[i],
+                    getBatchTolerance(curve, times[i]));
+        }
+        assertEquals(-1, out[4], 0);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void batchRejectsRangeOutOfArrays() {
+        ImmutableCubicBezierInterpolator.obtain(.4f, 0, .2f, 1)
+                .interpolate(new float[4], new float[3], 0, 4);
+    }
+
+    @Test
+    public void obtainReturnsSameInstanceForEqualControlPoints() {
+        for (float[] curve : CURVES) {
+            ImmutableCubicBezierInterpolator interpolator = ImmutableCubicBezierInterpolator.obtain(
+                    curve[0], curve[1], curve[2], curve[3]);
+            assertSame(interpolator, ImmutableCubicBezierInterpolator.obtain(
+                    curve[0], curve[1], curve[2], curve[3]));
+            assertSame(interpolator, ImmutableCubicBezierInterpolator.obtain(
+                    (double) curve[0], (double) curve[1], (double) curve[2], (double) curve[3]));
+        }
+        assertNotSame(ImmutableCubicBezierInterpolator.obtain(.42f, 0, 1, 1),
+                ImmutableCubicBezierInterpolator.obtain(.42f, 0, .58f, 1));
+    }
+
+    private static void assertBatchMatchesGetInterpolation(float[] times) {
+        float epsilon = CubicBezierInterpolator.DEFAULT_EPSILON;
+        for (float[] curve : CURVES) {
+            ImmutableCubicBezierInterpolator interpolator = ImmutableCubicBezierInterpolator.obtain(
+                    curve[0], curve[1], curve[2], curve[3]);
+            float[] out = new float[times.length];
+            interpolator.interpolate(times, out, 0, times.length);
+
+            for (int i = 0; i < times.length; i++) {
+                float x = times[i];
+                assertEquals(describe(curve, CubicBezierInterpolator.DEFAULT_SAMPLE_SIZE,
+                        epsilon, x), interpolator.getInterpolation(x), out[i],
+                        getBatchTolerance(curve, x));
+            }
+        }
+    }
+
+    /**
+     * Batch and per call solutions are each within epsilon of x, but may differ from each other,
+     * so outputs may differ by as much as y changes over the parameters that close to x.
+     */
+    private static double getBatchTolerance(float[] curve, float x) {
+        double xTolerance = CubicBezierInterpolator.DEFAULT_EPSILON + FLOAT_TOLERANCE;
+        double from = solveExactly(curve, x - xTolerance);
+        double to = solveExactly(curve, x + xTolerance);
+        double maxDy = 0;
+        for (int i = 0; i <= 8; i++) {
+            double t = from + (to - from) * i / 8;
+            maxDy = Math.max(maxDy, Math.abs(curveDerivative(curve[1], curve[3], t)));
+        }
+        // Sampling can miss the maximum of the derivative in between
+        return 1.1 * maxDy * (to - from) + FLOAT_TOLERANCE;
+    }
+
+    /**
+     * One dimension of the curve of (0, 0), (p1, _), (p2, _), (1, 1) at t, in double precision.
+     */
+    private static double curve(double p1, double p2, double t) {
+        double u = 1 - t;
+        return 3 * u * u * t * p1 + 3 * u * t * t * p2 + t * t * t;
+    }
+
+    private static double curveDerivative(double p1, double p2, double t) {
+        double u = 1 - t;
+        return 3 * u * u * p1 + 6 * u * t * (p2 - p1) + 3 * t * t * (1 - p2);
+    }
+
+    private static double solveExactly(float[] curve, double x) {
+        double t0 = 0;
+        double t1 = 1;
+        for (int i = 0; i < 100; i++) {
+            double t = (t0 + t1) / 2;
+            if (curve(curve[0], curve[2], t) < x) {
+                t0 = t;
+            } else {
+                t1 = t;
+            }
+        }
+        return (t0 + t1) / 2;
+    }
+
+    /**
+     * Upper bound of |dy / dx| between the parameters, which turns an error of x into
+     * an error of y.
+     */
+    private static double getSlopeBound(float[] curve, double t0, double t1) {
+        double maxDy = 0;
+        double minDx = Double.MAX_VALUE;
+        double from = Math.max(0, Math.min(t0, t1) - 1e-3);
+        double to = Math.min(1, Math.max(t0, t1) + 1e-3);
+        for (int i = 0; i <= 8; i++) {
+            double t = from + (to - from) * i / 8;
+            maxDy = Math.max(maxDy, Math.abs(curveDerivative(curve[1], curve[3], t)));
+            minDx = Math.min(minDx, Math.abs(curveDerivative(curve[0], curve[2], t)));
+        }
+        return minDx > 0 ? maxDy / minDx : Double.MAX_VALUE;
+    }
+
+    private static String describe(float[] curve, int sampleSize, float epsilon, float x) {
+        return "curve(" + curve[0] + ", " + curve[1] + ", " + curve[2] + ", " + curve[3]
+                + ") samples: " + sampleSize + ", epsilon: " + epsilon
+                + ", x: " + x;
+    }
+}
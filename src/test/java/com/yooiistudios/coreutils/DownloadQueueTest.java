@@ -0,0 +1,418 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives the network awareness of DownloadQueue with a fake connectivity source. Tasks are not
+ * executed(AsyncTask does nothing in local unit tests), so the test reports their results to
+ * the queue through the listener each task was created with.
+ */
+public class DownloadQueueTest {
+    private static final long CELLULAR_MAX_BYTES_PER_SECOND = 100 * 1024;
+
+    private FakeSource mSource;
+    private ConnectivityMonitor mMonitor;
+    private RecordingQueue mQueue;
+    private CountingListener mListener;
+
+    @Before
+    public void setUp() {
+        mSource = new FakeSource(ConnectivityMonitor.NetworkType.WIFI);
+        mMonitor = new ConnectivityMonitor(mSource);
+        mQueue = new RecordingQueue(2, 2);
+        mQueue.setConnectivityMonitor(mMonitor);
+        mQueue.setCellularMaxBytesPerSecond(CELLULAR_MAX_BYTES_PER_SECOND);
+        mListener = new CountingListener();
+    }
+
+    @Test
+    public void offlinePausesRunningAndDefersNewDownloads() {
+        enqueue("a", DownloadQueue.NetworkPolicy.ANY);
+        enqueue("b", DownloadQueue.NetworkPolicy.ANY);
+        assertEquals(2, mQueue.getRunningCount());
+
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.NONE);
+        reportCancelled(0);
+        reportCancelled(1);
+        enqueue("c", DownloadQueue.NetworkPolicy.ANY);
+        assertEquals(0, mQueue.getRunningCount());
+        assertEquals(3, mQueue.getPendingCount());
+        assertEquals(0, mListener.mCancelCount);
+
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.WIFI);
+        assertEquals(2, mQueue.getRunningCount());
+        assertEquals(1, mQueue.getPendingCount());
+        // Paused downloads are restarted before the new one
+        assertEquals(4, mQueue.mTasks.size());
+        assertEquals(getUrl("a"), mQueue.mTasks.get(2).mRequest.getUrl());
+        assertEquals(getUrl("b"), mQueue.mTasks.get(3).mRequest.getUrl());
+    }
+
+    @Test
+    public void wifiOnlyIsDeferredOnCellular() {
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.CELLULAR);
+        enqueue("wifi-only", DownloadQueue.NetworkPolicy.WIFI_ONLY);
+        enqueue("any", DownloadQueue.NetworkPolicy.ANY);
+        assertEquals(1, mQueue.getRunningCount());
+        assertEquals(getUrl("any"), mQueue.mTasks.get(0).mRequest.getUrl());
+
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.WIFI);
+        assertEquals(2, mQueue.getRunningCount());
+        assertEquals(getUrl("wifi-only"), mQueue.mTasks.get(1).mRequest.getUrl());
+    }
+
+    @Test
+    public void wifiOnlyIsPausedWhenCellularTakesOver() {
+        enqueue("wifi-only", DownloadQueue.NetworkPolicy.WIFI_ONLY);
+        enqueue("any", DownloadQueue.NetworkPolicy.ANY);
+
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.CELLULAR);
+        reportCancelled(0);
+        assertEquals(1, mQueue.getRunningCount());
+        assertEquals(1, mQueue.getPendingCount());
+        assertEquals(0, mListener.mCancelCount);
+
+        // The paused download starts over when wifi returns, and finishes
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.WIFI);
+        RecordingTask restartedTask = mQueue.mTasks.get(mQueue.mTasks.size() - 1);
+        assertEquals(getUrl("wifi-only"), restartedTask.mRequest.getUrl());
+        restartedTask.mListener.onDownloadSuccess();
+        assertEquals(1, mListener.mSuccessCount);
+        assertEquals(1, mQueue.getRunningCount());
+    }
+
+    @Test
+    public void throttleOnCellularFollowsNetwork() {
+        enqueue("throttled", DownloadQueue.NetworkPolicy.THROTTLE_ON_CELLULAR);
+        enqueue("any", DownloadQueue.NetworkPolicy.ANY);
+        RecordingTask throttledTask = mQueue.mTasks.get(0);
+        RecordingTask task = mQueue.mTasks.get(1);
+        assertEquals(0, throttledTask.mMaxBytesPerSecond);
+
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.CELLULAR);
+        assertEquals(CELLULAR_MAX_BYTES_PER_SECOND, throttledTask.mMaxBytesPerSecond);
+        assertEquals(0, task.mMaxBytesPerSecond);
+        assertEquals(2, mQueue.getRunningCount());
+
+        mQueue.setCellularMaxBytesPerSecond(CELLULAR_MAX_BYTES_PER_SECOND / 2);
+        assertEquals(CELLULAR_MAX_BYTES_PER_SECOND / 2, throttledTask.mMaxBytesPerSecond);
+
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.WIFI);
+        assertEquals(0, throttledTask.mMaxBytesPerSecond);
+    }
+
+    @Test
+    public void pausedDownloadsStayInProgress() {
+        RecordingProgressListener progressListener = new RecordingProgressListener();
+        mQueue.setOnQueueProgressListener(progressListener);
+        enqueue("wifi-only", DownloadQueue.NetworkPolicy.WIFI_ONLY);
+        enqueue("any", DownloadQueue.NetworkPolicy.ANY);
+        mQueue.mTasks.get(0).mListener.onDownloadProgressUpdate(60, 100);
+        mQueue.mTasks.get(1).mListener.onDownloadProgressUpdate(10, 100);
+
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.CELLULAR);
+        reportCancelled(0);
+        mQueue.mTasks.get(1).mListener.onDownloadProgressUpdate(20, 100);
+        assertArrayEquals(new long[] { 80, 200 }, progressListener.mLastProgress);
+    }
+
+    @Test
+    public void higherPriorityStartsFirst() {
+        DownloadQueue queue = new RecordingQueue(1, 1);
+        enqueue(queue, "first", 0);
+        enqueue(queue, "low", 0);
+        enqueue(queue, "high", 10);
+        enqueue(queue, "middle", 5);
+        enqueue(queue, "high-later", 10);
+
+        String[] expectedOrder = { "first", "high", "high-later", "middle", "low" };
+        List<RecordingTask> tasks = ((RecordingQueue) queue).mTasks;
+        for (int i = 0; i < expectedOrder.length; i++) {
+            assertEquals(i + 1, tasks.size());
+            assertEquals(getUrl(expectedOrder[i]), tasks.get(i).mRequest.getUrl());
+            tasks.get(i).mListener.onDownloadSuccess();
+        }
+        assertEquals(expectedOrder.length, mListener.mSuccessCount);
+        assertEquals(0, queue.getRunningCount());
+    }
+
+    @Test
+    public void runningCountIsCappedPerHost() {
+        DownloadQueue queue = new RecordingQueue(4, 2);
+        for (int i = 0; i < 3; i++) {
+            queue.enqueue(new DownloadQueue.Request("http://a.example.com/" + i, new File("a" + i)),
+                    mListener);
+        }
+        queue.enqueue(new DownloadQueue.Request("http://b.example.com/0", new File("b0")),
+                mListener);
+        List<RecordingTask> tasks = ((RecordingQueue) queue).mTasks;
+        assertEquals(3, queue.getRunningCount());
+        assertEquals(1, queue.getPendingCount());
+        assertEquals("http://b.example.com/0", tasks.get(2).mRequest.getUrl());
+
+        tasks.get(0).mListener.onDownloadSuccess();
+        assertEquals(3, queue.getRunningCount());
+        assertEquals("http://a.example.com/2", tasks.get(3).mRequest.getUrl());
+    }
+
+    @Test
+    public void sameUrlAndDestinationIsDownloadedOnce() {
+        DownloadQueue queue = new RecordingQueue(1, 1);
+        CountingListener otherListener = new CountingListener();
+        assertTrue(queue.enqueue(new DownloadQueue.Request(getUrl("a"), new File("a")), mListener));
+        assertFalse(queue.enqueue(new DownloadQueue.Request(getUrl("a"), new File("a")),
+                otherListener));
+        assertTrue(queue.enqueue(new DownloadQueue.Request(getUrl("a"), new File("copy")),
+                mListener));
+
+        List<RecordingTask> tasks = ((RecordingQueue) queue).mTasks;
+        assertEquals(1, tasks.size());
+        assertEquals(1, queue.getPendingCount());
+        tasks.get(0).mListener.onDownloadSuccess();
+        assertEquals(1, mListener.mSuccessCount);
+        assertEquals(1, otherListener.mSuccessCount);
+
+        // Once finished, the same request is downloaded again
+        assertTrue(queue.enqueue(new DownloadQueue.Request(getUrl("a"), new File("a")), mListener));
+    }
+
+    @Test
+    public void cancelByTagIsPostedOutsideLock() {
+        DownloadQueue queue = new RecordingQueue(1, 1);
+        mListener.mQueue = queue;
+        enqueue(queue, "running", "x");
+        enqueue(queue, "pending", "x");
+        enqueue(queue, "other", "y");
+
+        queue.cancel("x");
+        assertEquals(0, mListener.mCancelCount);
+        assertEquals(1, queue.getPendingCount());
+        runPosted(queue);
+        assertEquals(1, mListener.mCancelCount);
+
+        // The running download is reported by its task
+        List<RecordingTask> tasks = ((RecordingQueue) queue).mTasks;
+        tasks.get(0).mListener.onDownloadCancel();
+        assertEquals(2, mListener.mCancelCount);
+        assertEquals(getUrl("other"), tasks.get(1).mRequest.getUrl());
+        assertEquals(1, queue.getRunningCount());
+        assertFalse(mListener.mCalledUnderLock);
+    }
+
+    @Test
+    public void idleIsPostedAfterCancelAll() {
+        RecordingProgressListener progressListener = new RecordingProgressListener();
+        mQueue.setOnQueueProgressListener(progressListener);
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.NONE);
+        enqueue("a", DownloadQueue.NetworkPolicy.ANY);
+        enqueue("b", DownloadQueue.NetworkPolicy.ANY);
+
+        mQueue.cancelAll();
+        assertEquals(0, progressListener.mIdleCount);
+        assertEquals(0, mListener.mCancelCount);
+        runPosted(mQueue);
+        assertEquals(1, progressListener.mIdleCount);
+        assertEquals(2, mListener.mCancelCount);
+    }
+
+    @Test
+    public void shutdownCancelsAndRejectsNewRequests() {
+        enqueue("a", DownloadQueue.NetworkPolicy.ANY);
+        enqueue("b", DownloadQueue.NetworkPolicy.ANY);
+        enqueue("c", DownloadQueue.NetworkPolicy.ANY);
+
+        mQueue.shutdown();
+        runPosted(mQueue);
+        assertEquals(1, mListener.mCancelCount);
+        assertEquals(0, mQueue.getPendingCount());
+
+        // Connectivity changes no longer reach the queue
+        mSource.setNetworkType(ConnectivityMonitor.NetworkType.NONE);
+        reportCancelled(0);
+        assertEquals(2, mListener.mCancelCount);
+        try {
+            enqueue("d", DownloadQueue.NetworkPolicy.ANY);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void cancelIsReportedUnlikePause() {
+        DownloadQueue.Request request = new DownloadQueue.Request(getUrl("a"), new File("a"));
+        request.setTag("tag");
+        mQueue.enqueue(request, mListener);
+        mQueue.cancel("tag");
+        reportCancelled(0);
+
+        assertEquals(1, mListener.mCancelCount);
+        assertEquals(0, mQueue.getRunningCount());
+        assertEquals(0, mQueue.getPendingCount());
+    }
+
+    private void enqueue(String name, DownloadQueue.NetworkPolicy networkPolicy) {
+        DownloadQueue.Request request = new DownloadQueue.Request(getUrl(name), new File(name));
+        request.setNetworkPolicy(networkPolicy);
+        mQueue.enqueue(request, mListener);
+    }
+
+    private void enqueue(DownloadQueue queue, String name, int priority) {
+        DownloadQueue.Request request = new DownloadQueue.Request(getUrl(name), new File(name));
+        request.setPriority(priority);
+        queue.enqueue(request, mListener);
+    }
+
+    private void enqueue(DownloadQueue queue, String name, Object tag) {
+        DownloadQueue.Request request = new DownloadQueue.Request(getUrl(name), new File(name));
+        request.setTag(tag);
+        queue.enqueue(request, mListener);
+    }
+
+    /**
+     * Runs what the queue has posted to the main thread.
+     */
+    private static void runPosted(DownloadQueue queue) {
+        List<Runnable> posted = ((RecordingQueue) queue).mPosted;
+        while (!posted.isEmpty()) {
+            posted.remove(0).run();
+        }
+    }
+
+    private static String getUrl(String name) {
+        return "http://cdn.example.com/" + name;
+    }
+
+    /**
+     * Reports the cancellation of a task the queue has paused, as the running task would.
+     */
+    private void reportCancelled(int taskIndex) {
+        mQueue.mTasks.get(taskIndex).mListener.onDownloadCancel();
+    }
+
+    private static class FakeSource implements ConnectivityMonitor.Source {
+        private ConnectivityMonitor.NetworkType mNetworkType;
+        private ConnectivityMonitor mMonitor;
+
+        FakeSource(ConnectivityMonitor.NetworkType networkType) {
+            mNetworkType = networkType;
+        }
+
+        void setNetworkType(ConnectivityMonitor.NetworkType networkType) {
+            mNetworkType = networkType;
+            mMonitor.refresh();
+        }
+
+        @Override
+        public ConnectivityMonitor.NetworkType getNetworkType() {
+            return mNetworkType;
+        }
+
+        @Override
+        public void start(ConnectivityMonitor monitor) {
+            mMonitor = monitor;
+        }
+
+        @Override
+        public void stop() {
+            mMonitor = null;
+        }
+    }
+
+    private static class RecordingQueue extends DownloadQueue {
+        private final List<RecordingTask> mTasks = new ArrayList<>();
+        private final List<Runnable> mPosted = new ArrayList<>();
+
+        RecordingQueue(int maxConcurrentCount, int maxPerHostCount) {
+            super(maxConcurrentCount, maxPerHostCount);
+        }
+
+        @Override
+        void postToMainThread(Runnable runnable) {
+            mPosted.add(runnable);
+        }
+
+        @Override
+        DownloadUrlTask createTask(Request request, DownloadUrlTask.OnDownloadListener listener) {
+            RecordingTask task = new RecordingTask(request, listener);
+            mTasks.add(task);
+            return task;
+        }
+    }
+
+    private static class RecordingTask extends DownloadUrlTask {
+        private final DownloadQueue.Request mRequest;
+        private final OnDownloadListener mListener;
+        private long mMaxBytesPerSecond;
+
+        RecordingTask(DownloadQueue.Request request, OnDownloadListener listener) {
+            super(request.getUrl(), request.getDestFile(), listener);
+            mRequest = request;
+            mListener = listener;
+        }
+
+        @Override
+        public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+            super.setMaxBytesPerSecond(maxBytesPerSecond);
+            mMaxBytesPerSecond = maxBytesPerSecond;
+        }
+    }
+
+    private static class CountingListener implements DownloadUrlTask.OnDownloadListener {
+        private int mSuccessCount = 0;
+        private int mCancelCount = 0;
+        private DownloadQueue mQueue;
+        private boolean mCalledUnderLock = false;
+
+        @Override
+        public void onDownloadProgressUpdate(int current, int total) {
+        }
+
+        @Override
+        public void onDownloadSuccess() {
+            checkLock();
+            mSuccessCount++;
+        }
+
+        @Override
+        public void onDownloadFail() {
+        }
+
+        @Override
+        public void onDownloadCancel() {
+            checkLock();
+            mCancelCount++;
+        }
+
+        private void checkLock() {
+            if (mQueue != null && Thread.holdsLock(mQueue)) {
+                mCalledUnderLock = true;
+            }
+        }
+    }
+
+    private static class RecordingProgressListener implements DownloadQueue.OnQueueProgressListener {
+        private long[] mLastProgress;
+        private int mIdleCount = 0;
+
+        @Override
+        public void onQueueProgressUpdate(long current, long total) {
+            mLastProgress = new long[] { current, total };
+        }
+
+        @Override
+        public void onQueueIdle() {
+            mIdleCount++;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.yooiistudios.coreutils.TestHttpServer.BODY_SIZE;
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadUrlTaskAtomicCommitTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mDestFile;
+    private File mPartFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestHttpServer();
+        mServer.setBody(createBody(2));
+        mDestFile = new File(mTemporaryFolder.getRoot(), "data.bin");
+        mPartFile = new File(mDestFile.getPath() + ".part");
+        Files.write(mDestFile.toPath(), createBody(1));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void readersNeverSeeTornFile() throws Exception {
+        byte[] oldBody = createBody(1);
+        byte[] newBody = createBody(2);
+        for (int i = 0; i < 4; i++) {
+            mServer.addStall(BODY_SIZE / 2, 200);
+            Thread downloadThread = startDownload(newTask(), new AtomicReference<DownloadUrlTask.State>());
+
+            int oldCount = 0;
+            while (downloadThread.isAlive()) {
+                byte[] read = readFile(mDestFile);
+                if (Arrays.equals(read, oldBody)) {
+                    oldCount++;
+                } else {
+                    assertArrayEquals("torn read", newBody, read);
+                }
+            }
+            downloadThread.join();
+            assertTrue(oldCount > 0);
+            assertArrayEquals(newBody, readFile(mDestFile));
+            assertFalse(mPartFile.exists());
+
+            // Next round replaces the new body with the old one
+            byte[] swap = oldBody;
+            oldBody = newBody;
+            newBody = swap;
+            mServer.setBody(newBody);
+        }
+    }
+
+    @Test
+    public void failureKeepsPreviousFileAndRemovesPartFile() throws Exception {
+        mServer.addReset(BODY_SIZE / 2);
+
+        assertEquals(DownloadUrlTask.State.FAIL, newTask().doInBackground());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+        assertFalse(mPartFile.exists());
+    }
+
+    @Test
+    public void cancellationKeepsPreviousFileAndRemovesPartFile() throws Exception {
+        mServer.addReset(BODY_SIZE / 2);
+        RetryPolicy retryPolicy = new RetryPolicy(2);
+        retryPolicy.setBackoff(60 * 1000, 1, 60 * 1000);
+        retryPolicy.setJitter(0);
+        final CountDownLatch backingOff = new CountDownLatch(1);
+        DownloadUrlTask task = newTask();
+        task.setRetryPolicy(retryPolicy);
+        task.setOnDownloadAttemptListener(new DownloadUrlTask.OnDownloadAttemptListener() {
+            @Override
+            public void onDownloadAttempt(DownloadAttempt attempt) {
+                backingOff.countDown();
+            }
+        });
+
+        AtomicReference<DownloadUrlTask.State> state = new AtomicReference<>();
+        Thread downloadThread = startDownload(task, state);
+        assertTrue(backingOff.await(30, TimeUnit.SECONDS));
+        // Part of the body is kept for the retry while backing off
+        assertTrue(mPartFile.exists());
+        downloadThread.interrupt();
+        downloadThread.join();
+
+        assertEquals(DownloadUrlTask.State.CANCELLED, state.get());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+        assertFalse(mPartFile.exists());
+    }
+
+    @Test
+    public void resumablePartFileIsKeptAndCommittedLater() throws Exception {
+        mServer.setETag("\"v2\"");
+        mServer.addReset(BODY_SIZE / 2);
+        DownloadUrlTask task = newTask();
+        task.setResumable(true);
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+        long partLength = mPartFile.length();
+        assertTrue(partLength > 0);
+
+        task = newTask();
+        task.setResumable(true);
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertEquals("bytes=" + partLength + "-",
+                mServer.getRangeHeaders().get(mServer.getRequestCount() - 1));
+        assertArrayEquals(createBody(2), readFile(mDestFile));
+        assertFalse(mPartFile.exists());
+    }
+
+    private DownloadUrlTask newTask() {
+        DownloadUrlTask task = new DownloadUrlTask(mServer.getUrl(), mDestFile, null);
+        task.setAtomicCommit(true);
+        return task;
+    }
+
+    private static Thread startDownload(final DownloadUrlTask task,
+                                        final AtomicReference<DownloadUrlTask.State> state) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                state.set(task.doInBackground());
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,211 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.yooiistudios.coreutils.TestHttpServer.BODY_SIZE;
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadUrlTaskConditionalTest {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mDestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestHttpServer();
+        mServer.setBody(createBody(1));
+        mServer.setETag("\"v1\"");
+        mDestFile = new File(mTemporaryFolder.getRoot(), "config.bin");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void notModifiedSucceedsWithoutTouchingFile() throws Exception {
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask(mDestFile).doInBackground());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+        mDestFile.setLastModified(1000);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(DownloadUrlTask.State.SUCCESS, newTask(mDestFile).doInBackground());
+        }
+        assertEquals(4, mServer.getRequestCount());
+        assertEquals(3, mServer.getNotModifiedCount());
+        assertEquals(1000, mDestFile.lastModified());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    @Test
+    public void lastModifiedIsRevalidatedWithoutETag() throws Exception {
+        mServer.setETag(null);
+        mServer.setLastModified("Wed, 21 Oct 2015 07:28:00 GMT");
+        newTask(mDestFile).doInBackground();
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask(mDestFile).doInBackground());
+        assertEquals(1, mServer.getNotModifiedCount());
+    }
+
+    @Test
+    public void changedResourceIsDownloadedAgain() throws Exception {
+        newTask(mDestFile).doInBackground();
+        mServer.setBody(createBody(2));
+        mServer.setETag("\"v2\"");
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask(mDestFile).doInBackground());
+        assertEquals(0, mServer.getNotModifiedCount());
+        assertArrayEquals(createBody(2), readFile(mDestFile));
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask(mDestFile).doInBackground());
+        assertEquals(1, mServer.getNotModifiedCount());
+    }
+
+    @Test
+    public void notModifiedWithAtomicCommitAndSegments() throws Exception {
+        DownloadUrlTask task = newTask(mDestFile);
+        task.setAtomicCommit(true);
+        task.setSegmentCount(4);
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+
+        task = newTask(mDestFile);
+        task.setAtomicCommit(true);
+        task.setSegmentCount(4);
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertEquals(1, mServer.getNotModifiedCount());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+        assertFalse(new File(mDestFile.getPath() + ".part").exists());
+    }
+
+    /**
+     * A process killed in the middle of the body leaves a torn file behind, which must not be
+     * revalidated by the validators of the new response.
+     */
+    @Test
+    public void interruptedDownloadIsNotRevalidated() throws Exception {
+        newTask(mDestFile).doInBackground();
+        mServer.setBody(createBody(2));
+        mServer.setETag("\"v2\"");
+        TestHttpServer.Fault hold = mServer.addHold(BODY_SIZE / 3);
+
+        final DownloadUrlTask task = newTask(mDestFile);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                task.doInBackground();
+            }
+        });
+        thread.start();
+        hold.awaitHeld();
+        waitForLength(mDestFile, BODY_SIZE / 3);
+
+        // Snapshot of the files at the moment the process would have been killed
+        File killedFile = new File(mTemporaryFolder.getRoot(), "killed.bin");
+        Files.copy(mDestFile.toPath(), killedFile.toPath());
+        File metaFile = new File(mDestFile.getPath() + ".meta");
+        if (metaFile.exists()) {
+            Files.copy(metaFile.toPath(), new File(killedFile.getPath() + ".meta").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        DownloadMetadata metadata = DownloadMetadata.read(killedFile);
+        assertTrue(metadata == null || !metadata.isComplete(killedFile));
+
+        hold.release();
+        thread.join();
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask(killedFile).doInBackground());
+        assertEquals(0, mServer.getNotModifiedCount());
+        assertArrayEquals(createBody(2), readFile(killedFile));
+    }
+
+    @Test
+    public void failedDownloadRemovesValidators() throws Exception {
+        newTask(mDestFile).doInBackground();
+        mServer.setBody(createBody(2));
+        mServer.setETag("\"v2\"");
+        mServer.addReset(BODY_SIZE / 2);
+
+        assertEquals(DownloadUrlTask.State.FAIL, newTask(mDestFile).doInBackground());
+        assertNull(DownloadMetadata.read(mDestFile));
+    }
+
+    @Test
+    public void completeResumedFileIsVerified() throws Exception {
+        byte[] body = createBody(1);
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+        DownloadUrlTask task = newTask(mDestFile);
+        task.setResumable(true);
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+
+        // Every byte is on the disk, so the server answers 416 to the resume request
+        task = newTask(mDestFile);
+        task.setResumable(true);
+        task.setExpectedDigest("SHA-256", digest);
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertEquals("bytes=" + BODY_SIZE + "-", getLastRange(mServer));
+
+        byte[] corrupted = Arrays.copyOf(body, body.length);
+        corrupted[BODY_SIZE / 2] ^= 1;
+        Files.write(mDestFile.toPath(), corrupted);
+        task = newTask(mDestFile);
+        task.setResumable(true);
+        task.setExpectedDigest("SHA-256", digest);
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertEquals("bytes=" + BODY_SIZE + "-", getLastRange(mServer));
+        assertFalse(mDestFile.exists());
+    }
+
+    @Test
+    public void completeResumedFileIsSizeChecked() throws Exception {
+        DownloadUrlTask task = newTask(mDestFile);
+        task.setResumable(true);
+        task.doInBackground();
+
+        task = newTask(mDestFile);
+        task.setResumable(true);
+        task.setExpectedSize(BODY_SIZE + 1);
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertFalse(mDestFile.exists());
+    }
+
+    private DownloadUrlTask newTask(File destFile) {
+        DownloadUrlTask task = new DownloadUrlTask(mServer.getUrl(), destFile, null);
+        task.setConditional(true);
+        return task;
+    }
+
+    private static String getLastRange(TestHttpServer server) {
+        List<String> rangeHeaders = server.getRangeHeaders();
+        return rangeHeaders.get(rangeHeaders.size() - 1);
+    }
+
+    /**
+     * Waits until the file has been truncated and written up to length.
+     */
+    private static void waitForLength(File file, long length) throws InterruptedException {
+        for (int i = 0; i < 1000 && file.length() != length; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(length, file.length());
+    }
+}
@@ -0,0 +1,91 @@
+package com.yooiistudios.coreutils;
+
+import com.yooiistudios.coreutils.lab.AesGcmCipher;
+import com.yooiistudios.coreutils.lab.ChunkedCipherFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DownloadUrlTaskEncryptionTest {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private final AesGcmCipher mCipher = new AesGcmCipher("DownloadKey".getBytes());
+    private TestHttpServer mServer;
+    private File mDestFile;
+    private byte[] mBody;
+
+    @Before
+    public void setUp() throws Exception {
+        mBody = createBody(1);
+        mServer = new TestHttpServer();
+        mServer.setBody(mBody);
+        mServer.setETag("\"v1\"");
+        mDestFile = new File(mTemporaryFolder.getRoot(), "asset.enc");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void bodyIsEncryptedWhileWritten() throws Exception {
+        DownloadUrlTask task = newTask();
+        task.setExpectedDigest("SHA-256", MessageDigest.getInstance("SHA-256").digest(mBody));
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+
+        byte[] written = readFile(mDestFile);
+        assertFalse(Arrays.equals(mBody, Arrays.copyOfRange(written,
+                written.length - mBody.length, written.length)));
+        assertMiddleChunkDecrypts();
+    }
+
+    @Test
+    public void retryStartsOver() throws Exception {
+        mServer.addReset(mBody.length / 2);
+        DownloadUrlTask task = newTask();
+        RetryPolicy retryPolicy = new RetryPolicy(2);
+        retryPolicy.setBackoff(1, 1, 1);
+        task.setRetryPolicy(retryPolicy);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        // The encrypted file is never appended to
+        assertNull(mServer.getRangeHeaders().get(1));
+        assertMiddleChunkDecrypts();
+    }
+
+    private DownloadUrlTask newTask() {
+        DownloadUrlTask task = new DownloadUrlTask(mServer.getUrl(), mDestFile, null);
+        task.setOutputCipher(mCipher);
+        return task;
+    }
+
+    private void assertMiddleChunkDecrypts() throws Exception {
+        ChunkedCipherFile file = new ChunkedCipherFile(mDestFile, mCipher);
+        try {
+            assertEquals(mBody.length, file.getPlainLength());
+            long middle = file.getChunkCount() / 2;
+            int chunkSize = file.getChunkSize();
+            assertArrayEquals(Arrays.copyOfRange(mBody, (int) middle * chunkSize,
+                    (int) Math.min(mBody.length, (middle + 1) * chunkSize)),
+                    file.readChunk(middle));
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.security.MessageDigest;
+
+import static com.yooiistudios.coreutils.TestHttpServer.BODY_SIZE;
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DownloadUrlTaskIntegrityTest {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mDestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestHttpServer();
+        mServer.setBody(createBody(1));
+        mDestFile = new File(mTemporaryFolder.getRoot(), "verified.bin");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void matchingDigestAndSizeSucceed() throws Exception {
+        DownloadUrlTask task = newTask();
+        task.setExpectedDigest("SHA-256", digest(createBody(1)));
+        task.setExpectedSize(BODY_SIZE);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    @Test
+    public void digestMismatchFailsAndRemovesFile() throws Exception {
+        DownloadUrlTask task = newTask();
+        task.setExpectedDigest("SHA-256", digest(createBody(2)));
+
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertFalse(mDestFile.exists());
+    }
+
+    @Test
+    public void sizeMismatchFailsAndRemovesFile() throws Exception {
+        DownloadUrlTask task = newTask();
+        task.setExpectedSize(BODY_SIZE - 1);
+
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertFalse(mDestFile.exists());
+    }
+
+    @Test
+    public void bodyShorterThanContentLengthFailsAndRemovesFile() throws Exception {
+        mServer.addReset(BODY_SIZE / 2);
+
+        assertEquals(DownloadUrlTask.State.FAIL, newTask().doInBackground());
+        assertFalse(mDestFile.exists());
+    }
+
+    private DownloadUrlTask newTask() {
+        return new DownloadUrlTask(mServer.getUrl(), mDestFile, null);
+    }
+
+    private static byte[] digest(byte[] body) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(body);
+    }
+}
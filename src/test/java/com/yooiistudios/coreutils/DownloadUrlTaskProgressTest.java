@@ -0,0 +1,122 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.yooiistudios.coreutils.TestHttpServer.BODY_SIZE;
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the progress updates of a download of known size. SystemClock does not advance in
+ * local unit tests, so the interval threshold is never reached between two updates.
+ */
+public class DownloadUrlTaskProgressTest {
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestHttpServer();
+        mServer.setBody(createBody(1));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void unthrottledDownloadPublishesEveryChunk() {
+        List<int[]> updates = download(new ProgressRecordingTask(mServer.getUrl(), createDestFile()));
+        assertTrue("updates: " + updates.size(), updates.size() >= BODY_SIZE / BUFFER_SIZE);
+        assertFinalUpdate(updates);
+    }
+
+    @Test
+    public void percentDeltaLimitsUpdates() {
+        ProgressRecordingTask task = new ProgressRecordingTask(mServer.getUrl(), createDestFile());
+        task.setMinProgressDelta(0, 10);
+        List<int[]> updates = download(task);
+
+        // First chunk, every 10% after it and the final update
+        assertTrue("updates: " + updates.size(), updates.size() >= 10 && updates.size() <= 11);
+        assertMinDelta(updates, BODY_SIZE / 10);
+        assertFinalUpdate(updates);
+    }
+
+    @Test
+    public void byteDeltaLimitsUpdates() {
+        ProgressRecordingTask task = new ProgressRecordingTask(mServer.getUrl(), createDestFile());
+        task.setMinProgressDelta(256 * 1024, 0);
+        List<int[]> updates = download(task);
+
+        assertTrue("updates: " + updates.size(), updates.size() >= 4 && updates.size() <= 5);
+        assertMinDelta(updates, 256 * 1024);
+        assertFinalUpdate(updates);
+    }
+
+    @Test
+    public void intervalLeavesFirstAndFinalUpdates() {
+        ProgressRecordingTask task = new ProgressRecordingTask(mServer.getUrl(), createDestFile());
+        task.setMinProgressInterval(1000);
+        List<int[]> updates = download(task);
+
+        assertEquals(2, updates.size());
+        assertTrue(updates.get(0)[0] <= BUFFER_SIZE);
+        assertFinalUpdate(updates);
+    }
+
+    private File createDestFile() {
+        return new File(mTemporaryFolder.getRoot(), "progress.bin");
+    }
+
+    private static List<int[]> download(ProgressRecordingTask task) {
+        task.setBufferSize(BUFFER_SIZE);
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        return task.mUpdates;
+    }
+
+    /**
+     * Every update but the final one is at least minDelta bytes after the previous one.
+     */
+    private static void assertMinDelta(List<int[]> updates, int minDelta) {
+        for (int i = 1; i < updates.size() - 1; i++) {
+            int delta = updates.get(i)[0] - updates.get(i - 1)[0];
+            assertTrue("delta: " + delta, delta >= minDelta);
+        }
+    }
+
+    private static void assertFinalUpdate(List<int[]> updates) {
+        assertArrayEquals(new int[] { BODY_SIZE, BODY_SIZE }, updates.get(updates.size() - 1));
+        for (int i = 1; i < updates.size(); i++) {
+            assertTrue(updates.get(i)[0] > updates.get(i - 1)[0]);
+        }
+    }
+
+    private static class ProgressRecordingTask extends DownloadUrlTask {
+        private final List<int[]> mUpdates = new ArrayList<>();
+
+        ProgressRecordingTask(String url, File destFile) {
+            super(url, destFile, null);
+        }
+
+        @Override
+        void dispatchProgress(int amount, int total) {
+            mUpdates.add(new int[] { amount, total });
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static com.yooiistudios.coreutils.TestHttpServer.BODY_SIZE;
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Resumes downloads cut by the server in the middle of the body.
+ */
+public class DownloadUrlTaskResumeTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mDestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestHttpServer();
+        mServer.setBody(createBody(1));
+        mServer.setETag("\"v1\"");
+        mDestFile = new File(mTemporaryFolder.getRoot(), "asset.bin");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void cutDownloadIsResumedFromPartialFile() throws Exception {
+        long partialLength = downloadUntilCut(BODY_SIZE / 3);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask().doInBackground());
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals("bytes=" + partialLength + "-", getLastRange(mServer));
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    @Test
+    public void repeatedCutsAreResumedUntilComplete() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.addReset(BODY_SIZE / 5);
+        }
+        long previousLength = 0;
+        DownloadUrlTask.State state;
+        while ((state = newTask().doInBackground()) == DownloadUrlTask.State.FAIL) {
+            assertTrue(mDestFile.length() > previousLength);
+            previousLength = mDestFile.length();
+        }
+        assertEquals(DownloadUrlTask.State.SUCCESS, state);
+        assertEquals(4, mServer.getRequestCount());
+        assertEquals("bytes=" + previousLength + "-", getLastRange(mServer));
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    @Test
+    public void changedResourceStartsOver() throws Exception {
+        downloadUntilCut(BODY_SIZE / 2);
+        mServer.setBody(createBody(2));
+        mServer.setETag("\"v2\"");
+
+        // If-Range does not match, so the server answers 200 with the whole new body
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask().doInBackground());
+        assertTrue(getLastRange(mServer).startsWith("bytes="));
+        assertArrayEquals(createBody(2), readFile(mDestFile));
+    }
+
+    @Test
+    public void serverWithoutRangesStartsOver() throws Exception {
+        downloadUntilCut(BODY_SIZE / 2);
+        mServer.setRangeSupported(false);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask().doInBackground());
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    @Test
+    public void partialFileIsRemovedWithoutResumable() throws Exception {
+        mServer.addReset(BODY_SIZE / 3);
+        DownloadUrlTask task = new DownloadUrlTask(mServer.getUrl(), mDestFile, null);
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertFalse(mDestFile.exists());
+
+        task = new DownloadUrlTask(mServer.getUrl(), mDestFile, null);
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertNull(getLastRange(mServer));
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    /**
+     * @return length of the partial file left by a response cut after afterBytes bytes
+     */
+    private long downloadUntilCut(long afterBytes) {
+        mServer.addReset(afterBytes);
+        assertEquals(DownloadUrlTask.State.FAIL, newTask().doInBackground());
+        long partialLength = mDestFile.length();
+        assertTrue("partial length: " + partialLength,
+                partialLength > 0 && partialLength <= afterBytes);
+        return partialLength;
+    }
+
+    private DownloadUrlTask newTask() {
+        DownloadUrlTask task = new DownloadUrlTask(mServer.getUrl(), mDestFile, null);
+        task.setResumable(true);
+        return task;
+    }
+
+    private static String getLastRange(TestHttpServer server) {
+        List<String> rangeHeaders = server.getRangeHeaders();
+        return rangeHeaders.get(rangeHeaders.size() - 1);
+    }
+}
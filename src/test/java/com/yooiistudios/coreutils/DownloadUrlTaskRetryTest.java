@@ -0,0 +1,225 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.yooiistudios.coreutils.TestHttpServer.BODY_SIZE;
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadUrlTaskRetryTest {
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mDestFile;
+    private final List<DownloadAttempt> mAttempts =
+            Collections.synchronizedList(new ArrayList<DownloadAttempt>());
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestHttpServer();
+        mServer.setBody(createBody(1));
+        mServer.setETag("\"v1\"");
+        mDestFile = new File(mTemporaryFolder.getRoot(), "file.bin");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void resetIsRetriedFromReceivedBytes() throws Exception {
+        mServer.addReset(BODY_SIZE / 2);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask(3).doInBackground());
+        assertBody();
+        assertEquals(2, mAttempts.size());
+
+        DownloadAttempt first = mAttempts.get(0);
+        assertEquals(1, first.getAttempt());
+        assertEquals(200, first.getResponseCode());
+        assertNotNull(first.getCause());
+        assertTrue(first.willRetry());
+
+        DownloadAttempt second = mAttempts.get(1);
+        assertEquals(2, second.getAttempt());
+        assertEquals(206, second.getResponseCode());
+        assertEquals(first.getBytesReceived(), second.getOffset());
+        assertEquals(BODY_SIZE - second.getOffset(), second.getBytesReceived());
+        assertNull(second.getCause());
+        assertFalse(second.willRetry());
+        assertEquals("bytes=" + second.getOffset() + "-", mServer.getRangeHeaders().get(1));
+    }
+
+    @Test
+    public void stallTimesOutAndIsRetried() throws Exception {
+        mServer.addStall(BODY_SIZE / 4, 3000);
+        DownloadUrlTask task = newTask(2);
+        RetryPolicy retryPolicy = createRetryPolicy(2);
+        retryPolicy.setTimeouts(1000, 300);
+        task.setRetryPolicy(retryPolicy);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertBody();
+        assertEquals(2, mAttempts.size());
+        assertTrue(mAttempts.get(0).getCause() instanceof SocketTimeoutException);
+        assertEquals(BODY_SIZE / 4, mAttempts.get(1).getOffset());
+    }
+
+    @Test
+    public void serverErrorsAreRetried() throws Exception {
+        mServer.addErrorResponse(503);
+        mServer.addErrorResponse(429);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, newTask(3).doInBackground());
+        assertBody();
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(503, mAttempts.get(0).getResponseCode());
+        assertEquals(429, mAttempts.get(1).getResponseCode());
+        assertEquals(200, mAttempts.get(2).getResponseCode());
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() throws Exception {
+        mServer.addErrorResponse(404);
+
+        assertEquals(DownloadUrlTask.State.FAIL, newTask(3).doInBackground());
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(1, mAttempts.size());
+        assertFalse(mAttempts.get(0).willRetry());
+    }
+
+    @Test
+    public void attemptsAreLimitedByPolicy() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mServer.addReset(BODY_SIZE / 4 * (i + 1));
+        }
+
+        assertEquals(DownloadUrlTask.State.FAIL, newTask(2).doInBackground());
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(2, mAttempts.size());
+        assertFalse(mAttempts.get(1).willRetry());
+        // Not resumable, so nothing is left for the next task
+        assertFalse(mDestFile.exists());
+    }
+
+    @Test
+    public void segmentedProbeIsRetried() throws Exception {
+        mServer.addErrorResponse(503);
+        mServer.addErrorResponse(500);
+        DownloadUrlTask task = newTask(3);
+        task.setSegmentCount(4);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertBody();
+        List<String> rangeHeaders = mServer.getRangeHeaders();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("bytes=0-0", rangeHeaders.get(i));
+        }
+        assertEquals(3 + 4, rangeHeaders.size());
+        assertEquals(503, mAttempts.get(0).getResponseCode());
+        assertTrue(mAttempts.get(0).willRetry());
+        assertEquals(500, mAttempts.get(1).getResponseCode());
+        assertEquals(206, mAttempts.get(2).getResponseCode());
+    }
+
+    @Test
+    public void segmentedProbeFailsWithoutRetry() throws Exception {
+        mServer.addErrorResponse(503);
+        DownloadUrlTask task = newTask(1);
+        task.setSegmentCount(4);
+
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(1, mAttempts.size());
+    }
+
+    @Test
+    public void segmentIsRetriedFromReceivedBytes() throws Exception {
+        // Probe, then the first segment request is reset
+        mServer.addStall(0, 1);
+        mServer.addReset(16 * 1024);
+        DownloadUrlTask task = newTask(2);
+        task.setSegmentCount(4);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertBody();
+        assertEquals(1 + 4 + 1, mServer.getRequestCount());
+        DownloadAttempt retried = null;
+        for (DownloadAttempt attempt : getAttempts()) {
+            if (attempt.getAttempt() == 2) {
+                assertNull(retried);
+                retried = attempt;
+            }
+        }
+        assertNotNull(retried);
+        assertEquals(206, retried.getResponseCode());
+        assertEquals(16 * 1024, retried.getOffset() % (BODY_SIZE / 4));
+    }
+
+    @Test
+    public void segmentsFollowSingleAttemptPolicy() throws Exception {
+        mServer.addStall(0, 1);
+        mServer.addReset(16 * 1024);
+        DownloadUrlTask task = newTask(1);
+        task.setSegmentCount(4);
+
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        // Probe and 4 segments at most, none of them retried
+        assertTrue(mServer.getRequestCount() <= 1 + 4);
+        int failedCount = 0;
+        for (DownloadAttempt attempt : getAttempts()) {
+            assertEquals(1, attempt.getAttempt());
+            assertFalse(attempt.willRetry());
+            if (attempt.getCause() != null) {
+                failedCount++;
+            }
+        }
+        assertEquals(1, failedCount);
+    }
+
+    private DownloadUrlTask newTask(int maxAttemptCount) {
+        DownloadUrlTask task = new DownloadUrlTask(mServer.getUrl(), mDestFile, null);
+        task.setRetryPolicy(createRetryPolicy(maxAttemptCount));
+        task.setOnDownloadAttemptListener(new DownloadUrlTask.OnDownloadAttemptListener() {
+            @Override
+            public void onDownloadAttempt(DownloadAttempt attempt) {
+                mAttempts.add(attempt);
+            }
+        });
+        return task;
+    }
+
+    private static RetryPolicy createRetryPolicy(int maxAttemptCount) {
+        RetryPolicy retryPolicy = new RetryPolicy(maxAttemptCount);
+        retryPolicy.setBackoff(1, 1, 1);
+        return retryPolicy;
+    }
+
+    private List<DownloadAttempt> getAttempts() {
+        synchronized (mAttempts) {
+            return new ArrayList<>(mAttempts);
+        }
+    }
+
+    private void assertBody() throws Exception {
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+}
@@ -0,0 +1,169 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.yooiistudios.coreutils.TestHttpServer.BODY_SIZE;
+import static com.yooiistudios.coreutils.TestHttpServer.createBody;
+import static com.yooiistudios.coreutils.TestHttpServer.readFile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Segmented download against a server which throttles every connection on its own, so that
+ * K connections are K times faster than one.
+ */
+public class DownloadUrlTaskSegmentedTest {
+    private static final int SEGMENT_COUNT = 4;
+    private static final int SEGMENT_SIZE = BODY_SIZE / SEGMENT_COUNT;
+    private static final long BYTES_PER_SECOND = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private TestHttpServer mServer;
+    private File mDestFile;
+    private final List<DownloadAttempt> mAttempts =
+            Collections.synchronizedList(new ArrayList<DownloadAttempt>());
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new TestHttpServer();
+        mServer.setBody(createBody(1));
+        mServer.setETag("\"v1\"");
+        mServer.setBytesPerSecond(BYTES_PER_SECOND);
+        mDestFile = new File(mTemporaryFolder.getRoot(), "segmented.bin");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void rangesAreFetchedConcurrently() throws Exception {
+        SegmentedTask task = newTask(1);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertEquals(SEGMENT_COUNT, mServer.getMaxConcurrentResponseCount());
+        List<String> rangeHeaders = mServer.getRangeHeaders();
+        assertEquals(1 + SEGMENT_COUNT, rangeHeaders.size());
+        assertEquals("bytes=0-0", rangeHeaders.get(0));
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            long start = (long) i * SEGMENT_SIZE;
+            assertTrue(rangeHeaders.contains("bytes=" + start + "-" + (start + SEGMENT_SIZE - 1)));
+        }
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    @Test
+    public void progressAddsUpToTotal() throws Exception {
+        SegmentedTask task = newTask(1);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        List<int[]> updates = task.mUpdates;
+        assertArrayEquals(new int[] { BODY_SIZE, BODY_SIZE }, updates.get(updates.size() - 1));
+        for (int i = 0; i < updates.size(); i++) {
+            assertEquals(BODY_SIZE, updates.get(i)[1]);
+            if (i > 0) {
+                assertTrue(updates.get(i)[0] > updates.get(i - 1)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void cutSegmentIsRetriedFromItsOwnOffset() throws Exception {
+        mServer.setBytesPerSecond(0);
+        // The probe passes, the first segment request is cut
+        mServer.addStall(0, 1);
+        mServer.addReset(64 * 1024);
+        SegmentedTask task = newTask(3);
+
+        assertEquals(DownloadUrlTask.State.SUCCESS, task.doInBackground());
+        assertEquals(2 + SEGMENT_COUNT, mServer.getRequestCount());
+        DownloadAttempt cutAttempt = null;
+        DownloadAttempt retryAttempt = null;
+        for (DownloadAttempt attempt : getAttempts()) {
+            if (attempt.willRetry()) {
+                cutAttempt = attempt;
+            } else if (attempt.getAttempt() == 2) {
+                retryAttempt = attempt;
+            }
+        }
+        assertEquals(0, cutAttempt.getOffset() % SEGMENT_SIZE);
+        assertEquals(64 * 1024, cutAttempt.getBytesReceived());
+        assertEquals(cutAttempt.getOffset() + 64 * 1024, retryAttempt.getOffset());
+        assertEquals(SEGMENT_SIZE - 64 * 1024, retryAttempt.getBytesReceived());
+
+        long segmentEnd = cutAttempt.getOffset() + SEGMENT_SIZE - 1;
+        assertTrue(mServer.getRangeHeaders().contains(
+                "bytes=" + retryAttempt.getOffset() + "-" + segmentEnd));
+        assertArrayEquals(createBody(1), readFile(mDestFile));
+    }
+
+    /**
+     * A failed segment stops the others at once, whichever segment it is.
+     */
+    @Test
+    public void firstFailureStopsOtherSegments() throws Exception {
+        // Every segment would take a second
+        mServer.setBytesPerSecond(SEGMENT_SIZE);
+        mServer.addStall(0, 1);
+        mServer.addStall(0, 1);
+        mServer.addStall(0, 1);
+        mServer.addStall(0, 1);
+        mServer.addErrorResponse(404);
+        SegmentedTask task = newTask(1);
+
+        long startNanos = System.nanoTime();
+        assertEquals(DownloadUrlTask.State.FAIL, task.doInBackground());
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+        assertTrue("elapsed: " + elapsedMillis, elapsedMillis < 700);
+        assertFalse(mDestFile.exists());
+    }
+
+    private SegmentedTask newTask(int maxAttemptCount) {
+        SegmentedTask task = new SegmentedTask(mServer.getUrl(), mDestFile);
+        task.setSegmentCount(SEGMENT_COUNT);
+        RetryPolicy retryPolicy = new RetryPolicy(maxAttemptCount);
+        retryPolicy.setBackoff(1, 1, 1);
+        task.setRetryPolicy(retryPolicy);
+        task.setOnDownloadAttemptListener(new DownloadUrlTask.OnDownloadAttemptListener() {
+            @Override
+            public void onDownloadAttempt(DownloadAttempt attempt) {
+                mAttempts.add(attempt);
+            }
+        });
+        return task;
+    }
+
+    private List<DownloadAttempt> getAttempts() {
+        synchronized (mAttempts) {
+            return new ArrayList<>(mAttempts);
+        }
+    }
+
+    private static class SegmentedTask extends DownloadUrlTask {
+        private final List<int[]> mUpdates = new ArrayList<>();
+
+        SegmentedTask(String url, File destFile) {
+            super(url, destFile, null);
+        }
+
+        @Override
+        void dispatchProgress(int amount, int total) {
+            // Called under the lock of the task
+            mUpdates.add(new int[] { amount, total });
+        }
+    }
+}
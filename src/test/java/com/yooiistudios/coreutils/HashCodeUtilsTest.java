@@ -0,0 +1,212 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashCodeUtilsTest {
+    @Test
+    public void unboundedHashEqualsRecursiveDefinition() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            Object value = createValue(random, 4);
+            assertEquals(hashRecursively(HashCodeUtils.SEED, value),
+                    HashCodeUtils.hash(HashCodeUtils.SEED, value));
+        }
+
+        // Large jagged array, whose rows must not be sampled without a budget
+        Object[] jagged = new Object[1000000];
+        int[] firstRow = new int[3000];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = random.nextInt();
+        }
+        jagged[0] = firstRow;
+        jagged[jagged.length - 1] = new long[] { 1L, 2L };
+        int hash = HashCodeUtils.hash(HashCodeUtils.SEED, jagged);
+        assertEquals(hashRecursively(HashCodeUtils.SEED, jagged), hash);
+        assertEquals(hash, HashCodeUtils.hash(HashCodeUtils.SEED, jagged, Integer.MAX_VALUE));
+
+        firstRow[1]++;
+        assertNotEquals(hash, HashCodeUtils.hash(HashCodeUtils.SEED, jagged));
+    }
+
+    @Test
+    public void primitiveArraysHashLikeTheirBoxedElements() {
+        Object[] arrays = {
+                new boolean[] { true, false }, new char[] { 'a', '가' },
+                new byte[] { -1, 2 }, new short[] { -3, 4 }, new int[] { -5, 6 },
+                new long[] { -7L, 1L << 40 }, new float[] { -0f, 1.5f },
+                new double[] { Double.NaN, -2.5 },
+        };
+        for (Object array : arrays) {
+            assertEquals(array.getClass().getSimpleName(), hashRecursively(HashCodeUtils.SEED, array),
+                    HashCodeUtils.hash(HashCodeUtils.SEED, array));
+        }
+    }
+
+    @Test
+    public void nullIsHashedAsZero() {
+        assertEquals(HashCodeUtils.hash(HashCodeUtils.SEED, 0),
+                HashCodeUtils.hash(HashCodeUtils.SEED, null));
+        int[] nullArray = null;
+        assertEquals(HashCodeUtils.hash(HashCodeUtils.SEED, 0),
+                HashCodeUtils.hash(HashCodeUtils.SEED, nullArray));
+    }
+
+    @Test
+    public void exhaustedBudgetTouchesNoMoreElements() {
+        Object[] wrapper = { new int[] { 1, 2, 3 } };
+        // The only unit of budget goes to the wrapper's element itself
+        assertEquals(HashCodeUtils.SEED, HashCodeUtils.hash(HashCodeUtils.SEED, wrapper, 1));
+
+        CountingObject[] counted = createCountingObjects(100);
+        HashCodeUtils.hash(HashCodeUtils.SEED, new Object[] { new Object[] { counted } }, 2);
+        assertEquals(0, getTotalCount(counted));
+    }
+
+    @Test
+    public void budgetIsSplitAcrossRows() {
+        int size = 1000;
+        int budget = 10000;
+        CountingObject[][] grid = new CountingObject[size][];
+        for (int i = 0; i < size; i++) {
+            grid[i] = createCountingObjects(size);
+        }
+        HashCodeUtils.hash(HashCodeUtils.SEED, grid, budget);
+
+        int total = 0;
+        for (CountingObject[] row : grid) {
+            int rowCount = getTotalCount(row);
+            assertTrue(rowCount > 0);
+            total += rowCount;
+        }
+        // Every row costs one unit itself
+        assertTrue("visited " + total, total <= budget - size);
+    }
+
+    @Test
+    public void gridsDifferingInLastRowHashDifferently() {
+        int size = 1000;
+        Object[] grid = new Object[size];
+        Object[] otherGrid = new Object[size];
+        for (int i = 0; i < size; i++) {
+            int[] row = new int[size];
+            int[] otherRow = new int[size];
+            if (i == size - 1) {
+                Arrays.fill(otherRow, 1);
+            }
+            grid[i] = row;
+            otherGrid[i] = otherRow;
+        }
+        assertNotEquals(HashCodeUtils.hash(HashCodeUtils.SEED, grid, 10000),
+                HashCodeUtils.hash(HashCodeUtils.SEED, otherGrid, 10000));
+    }
+
+    @Test
+    public void unusedBudgetGoesToFollowingElements() {
+        CountingObject[] last = createCountingObjects(100);
+        Object[] array = { new Object[0], null, "a", last };
+        HashCodeUtils.hash(HashCodeUtils.SEED, array, 104);
+        assertEquals(100, getTotalCount(last));
+    }
+
+    @Test
+    public void mutuallyReferencingArraysTerminate() {
+        Object[] a = new Object[2];
+        Object[] b = new Object[] { a, 1 };
+        a[0] = b;
+        a[1] = a;
+        assertEquals(HashCodeUtils.hash(HashCodeUtils.SEED, 1),
+                HashCodeUtils.hash(HashCodeUtils.SEED, a));
+    }
+
+    @Test
+    public void deepNestingDoesNotOverflowStack() {
+        Object[] root = new Object[1];
+        Object[] array = root;
+        for (int i = 0; i < 100000; i++) {
+            Object[] child = new Object[1];
+            array[0] = child;
+            array = child;
+        }
+        array[0] = 7;
+        assertEquals(HashCodeUtils.hash(HashCodeUtils.SEED, 7),
+                HashCodeUtils.hash(HashCodeUtils.SEED, root));
+    }
+
+    /**
+     * Previous recursive implementation, which hashed arrays element by element through
+     * reflection.
+     */
+    private static int hashRecursively(int seed, Object object) {
+        if (object == null) {
+            return HashCodeUtils.hash(seed, 0);
+        }
+        if (!object.getClass().isArray()) {
+            return HashCodeUtils.hash(seed, object.hashCode());
+        }
+        int result = seed;
+        for (int i = 0; i < Array.getLength(object); i++) {
+            Object item = Array.get(object, i);
+            if (item != object) {
+                result = hashRecursively(result, item);
+            }
+        }
+        return result;
+    }
+
+    private static Object createValue(Random random, int depth) {
+        switch (random.nextInt(depth > 0 ? 6 : 4)) {
+            case 0:
+                return null;
+            case 1:
+                return random.nextLong();
+            case 2:
+                return "s" + random.nextInt();
+            case 3:
+                double[] doubles = new double[random.nextInt(5)];
+                for (int i = 0; i < doubles.length; i++) {
+                    doubles[i] = random.nextDouble();
+                }
+                return doubles;
+            default:
+                Object[] array = new Object[random.nextInt(6)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = createValue(random, depth - 1);
+                }
+                return array;
+        }
+    }
+
+    private static CountingObject[] createCountingObjects(int count) {
+        CountingObject[] objects = new CountingObject[count];
+        for (int i = 0; i < count; i++) {
+            objects[i] = new CountingObject();
+        }
+        return objects;
+    }
+
+    private static int getTotalCount(CountingObject[] objects) {
+        int count = 0;
+        for (CountingObject object : objects) {
+            count += object.mHashCodeCount;
+        }
+        return count;
+    }
+
+    private static class CountingObject {
+        private int mHashCodeCount = 0;
+
+        @Override
+        public int hashCode() {
+            mHashCodeCount++;
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.yooiistudios.coreutils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Distribution quality of the Hasher mixers on composite keys.
+ *
+ * Keys are bucketed by the low bits of the hash, as a power of two table does, and compared
+ * with the uniform distribution by a chi-square test.
+ */
+public class HasherDistributionTest {
+    private static final int BUCKET_BITS = 10;
+    private static final int BUCKET_COUNT = 1 << BUCKET_BITS;
+    private static final HashCodeUtils.Mixer[] AVALANCHE_MIXERS =
+            { HashCodeUtils.Mixer.MURMUR3, HashCodeUtils.Mixer.XXHASH };
+
+    /**
+     * Critical value of chi-square for BUCKET_COUNT - 1 degrees of freedom at p = 0.001,
+     * by the Wilson–Hilferty approximation.
+     */
+    private static final double CHI_SQUARE_LIMIT = getChiSquareLimit(BUCKET_COUNT - 1, 3.09);
+
+    @Test
+    public void latLngGridIsUniform() {
+        for (HashCodeUtils.Mixer mixer : AVALANCHE_MIXERS) {
+            HashCodeUtils.Hasher hasher = HashCodeUtils.newHasher(mixer);
+            int[] buckets32 = new int[BUCKET_COUNT];
+            int[] buckets64 = new int[BUCKET_COUNT];
+            // 0.001 degree grid around Seoul
+            for (int lat = 0; lat < 256; lat++) {
+                for (int lng = 0; lng < 256; lng++) {
+                    hasher.reset().put(37.5 + lat * .001).put(126.9 + lng * .001);
+                    buckets32[hasher.hash() & (BUCKET_COUNT - 1)]++;
+                    buckets64[(int) (hasher.hash64() >>> (64 - BUCKET_BITS))]++;
+                }
+            }
+            assertUniform(mixer + " 32 bit", buckets32);
+            assertUniform(mixer + " 64 bit high bits", buckets64);
+        }
+    }
+
+    @Test
+    public void idAndTimestampAreUniform() {
+        for (HashCodeUtils.Mixer mixer : AVALANCHE_MIXERS) {
+            HashCodeUtils.Hasher hasher = HashCodeUtils.newHasher(mixer);
+            int[] buckets = new int[BUCKET_COUNT];
+            long timestamp = 1445412480000L;
+            for (int id = 0; id < 65536; id++) {
+                // Ids created once per second, so both fields move in lockstep
+                hasher.reset().put(id).put(timestamp + id * 1000L);
+                buckets[hasher.hash() & (BUCKET_COUNT - 1)]++;
+            }
+            assertUniform(mixer.toString(), buckets);
+        }
+    }
+
+    /**
+     * Flipping any input bit flips each output bit with probability close to 1/2.
+     */
+    @Test
+    public void singleBitChangeAvalanches() {
+        Random random = new Random(6);
+        int sampleCount = 2000;
+        for (HashCodeUtils.Mixer mixer : AVALANCHE_MIXERS) {
+            HashCodeUtils.Hasher hasher = HashCodeUtils.newHasher(mixer);
+            double maxBias = getMaxAvalancheBias(hasher, random, sampleCount);
+            // 4.5 standard deviations of a fair coin over sampleCount trials
+            assertTrue(mixer + " bias: " + maxBias, maxBias < 4.5 * .5 / Math.sqrt(sampleCount));
+        }
+
+        // Bloch's 37 * seed + value chaining is the reason for the other mixers
+        double blochBias = getMaxAvalancheBias(
+                HashCodeUtils.newHasher(HashCodeUtils.Mixer.BLOCH), random, sampleCount);
+        assertTrue("BLOCH bias: " + blochBias, blochBias > .4);
+    }
+
+    @Test
+    public void blochMixerMatchesStaticChaining() {
+        HashCodeUtils.Hasher hasher = HashCodeUtils.newHasher(HashCodeUtils.Mixer.BLOCH);
+        int expected = HashCodeUtils.SEED;
+        expected = HashCodeUtils.hash(expected, 42);
+        expected = HashCodeUtils.hash(expected, 1445412480000L);
+        expected = HashCodeUtils.hash(expected, "id");
+        assertEquals(expected, hasher.put(42).put(1445412480000L).put("id").hash());
+    }
+
+    /**
+     * @return largest deviation from 1/2 of the flip probability over all pairs of
+     * (input bit of a long, output bit of hash64())
+     */
+    private static double getMaxAvalancheBias(HashCodeUtils.Hasher hasher, Random random,
+                                              int sampleCount) {
+        int[][] flipCounts = new int[64][64];
+        for (int i = 0; i < sampleCount; i++) {
+            long value = random.nextLong();
+            long hash = hasher.reset().put(value).hash64();
+            for (int inputBit = 0; inputBit < 64; inputBit++) {
+                long flipped = hasher.reset().put(value ^ (1L << inputBit)).hash64() ^ hash;
+                for (int outputBit = 0; outputBit < 64; outputBit++) {
+                    flipCounts[inputBit][outputBit] += (int) (flipped >>> outputBit) & 1;
+                }
+            }
+        }
+        double maxBias = 0;
+        for (int[] counts : flipCounts) {
+            for (int count : counts) {
+                maxBias = Math.max(maxBias, Math.abs((double) count / sampleCount - .5));
+            }
+        }
+        return maxBias;
+    }
+
+    private static void assertUniform(String message, int[] buckets) {
+        long total = 0;
+        for (int count : buckets) {
+            total += count;
+        }
+        double expected = (double) total / buckets.length;
+        double chiSquare = 0;
+        for (int count : buckets) {
+            chiSquare += (count - expected) * (count - expected) / expected;
+        }
+        assertTrue(message + " chi-square: " + chiSquare + " > " + CHI_SQUARE_LIMIT,
+                chiSquare < CHI_SQUARE_LIMIT);
+    }
+
+    private static double getChiSquareLimit(int degreesOfFreedom, double z) {
+        double a = 2. / (9 * degreesOfFreedom);
+        double b = 1 - a + z * Math.sqrt(a);
+        return degreesOfFreedom * b * b * b;
+    }
+}
@@ -0,0 +1,356 @@
+package com.yooiistudios.coreutils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TestHttpServer
+ *  In-process HTTP server for download tests. Serves a single resource at every path.
+ *
+ *  Supports ETag / Last-Modified, If-None-Match / If-Modified-Since(304) and
+ *  Range / If-Range(206, 416). Faults added with addReset(), addStall(), addHold() and
+ *  addErrorResponse() are applied to the following requests, one fault per request.
+ *  setBytesPerSecond() throttles every response on its own, like a link limited per connection.
+ */
+class TestHttpServer {
+    /**
+     * Length of the bodies made by createBody(int).
+     */
+    static final int BODY_SIZE = 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final long HOLD_TIMEOUT_SECONDS = 30;
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final Queue<Fault> mFaults = new ConcurrentLinkedQueue<>();
+
+    private volatile byte[] mBody = new byte[0];
+    private volatile String mETag;
+    private volatile String mLastModified;
+    private volatile boolean mRangeSupported = true;
+    private volatile long mBytesPerSecond = 0;
+
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mNotModifiedCount = new AtomicInteger();
+    private final AtomicInteger mSendingCount = new AtomicInteger();
+    private final AtomicInteger mMaxSendingCount = new AtomicInteger();
+    private final Set<SocketAddress> mConnections =
+            Collections.synchronizedSet(new HashSet<SocketAddress>());
+    private final List<String> mRangeHeaders =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Fault applied to a single request.
+     */
+    static class Fault {
+        private final int mResponseCode;
+        private final long mAfterBytes;
+        private final long mStallMillis;
+        private final CountDownLatch mHeld = new CountDownLatch(1);
+        private final CountDownLatch mReleased;
+
+        private Fault(int responseCode, long afterBytes, long stallMillis, boolean hold) {
+            mResponseCode = responseCode;
+            mAfterBytes = afterBytes;
+            mStallMillis = stallMillis;
+            mReleased = hold ? new CountDownLatch(1) : null;
+        }
+
+        /**
+         * Waits until the response of a hold has sent its bytes before the hold.
+         */
+        void awaitHeld() throws InterruptedException {
+            if (!mHeld.await(HOLD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new AssertionError("Response has not reached the hold");
+            }
+        }
+
+        /**
+         * Resets the connection of a held response.
+         */
+        void release() {
+            mReleased.countDown();
+        }
+    }
+
+    TestHttpServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * @return BODY_SIZE random bytes, the same for the same version
+     */
+    static byte[] createBody(int version) {
+        return createBody(version, BODY_SIZE);
+    }
+
+    static byte[] createBody(int version, int length) {
+        byte[] body = new byte[length];
+        new Random(version).nextBytes(body);
+        return body;
+    }
+
+    static byte[] readFile(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    String getUrl() {
+        return getUrl("/file");
+    }
+
+    String getUrl(String path) {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+    }
+
+    void setBody(byte[] body) {
+        mBody = body;
+    }
+
+    void setETag(String eTag) {
+        mETag = eTag;
+    }
+
+    void setLastModified(String lastModified) {
+        mLastModified = lastModified;
+    }
+
+    void setRangeSupported(boolean rangeSupported) {
+        mRangeSupported = rangeSupported;
+    }
+
+    /**
+     * @param bytesPerSecond rate of the body of each response. 0 sends at full speed.
+     */
+    void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Next response resets the connection after afterBytes bytes of the body.
+     */
+    void addReset(long afterBytes) {
+        mFaults.add(new Fault(0, afterBytes, 0, false));
+    }
+
+    /**
+     * Next response stops sending for stallMillis after afterBytes bytes of the body.
+     */
+    void addStall(long afterBytes, long stallMillis) {
+        mFaults.add(new Fault(0, afterBytes, stallMillis, false));
+    }
+
+    /**
+     * Next response stops after afterBytes bytes of the body until Fault.release(),
+     * then resets the connection.
+     */
+    Fault addHold(long afterBytes) {
+        Fault fault = new Fault(0, afterBytes, 0, true);
+        mFaults.add(fault);
+        return fault;
+    }
+
+    /**
+     * Next request gets responseCode with a short error body.
+     */
+    void addErrorResponse(int responseCode) {
+        mFaults.add(new Fault(responseCode, -1, 0, false));
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    int getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * @return largest number of response bodies which have been sent at the same time
+     */
+    int getMaxConcurrentResponseCount() {
+        return mMaxSendingCount.get();
+    }
+
+    /**
+     * @return number of distinct client sockets requests have been received on
+     */
+    int getConnectionCount() {
+        return mConnections.size();
+    }
+
+    /**
+     * @return Range headers of the requests in order, null for requests without one
+     */
+    List<String> getRangeHeaders() {
+        synchronized (mRangeHeaders) {
+            return new ArrayList<>(mRangeHeaders);
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        mConnections.add(exchange.getRemoteAddress());
+        drain(exchange.getRequestBody());
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        mRangeHeaders.add(range);
+
+        Fault fault = mFaults.poll();
+        if (fault != null && fault.mResponseCode > 0) {
+            byte[] errorBody = "error".getBytes("UTF-8");
+            exchange.sendResponseHeaders(fault.mResponseCode, errorBody.length);
+            exchange.getResponseBody().write(errorBody);
+            return;
+        }
+
+        byte[] body = mBody;
+        String eTag = mETag;
+        String lastModified = mLastModified;
+        if (eTag != null) {
+            exchange.getResponseHeaders().set("ETag", eTag);
+        }
+        if (lastModified != null) {
+            exchange.getResponseHeaders().set("Last-Modified", lastModified);
+        }
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        boolean notModified = ifNoneMatch != null
+                ? ifNoneMatch.equals(eTag)
+                : ifModifiedSince != null && ifModifiedSince.equals(lastModified);
+        if (notModified) {
+            mNotModifiedCount.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        int start = 0;
+        int end = body.length - 1;
+        int responseCode = 200;
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        boolean rangeValid = ifRange == null || ifRange.equals(eTag) || ifRange.equals(lastModified);
+        if (range != null && mRangeSupported && rangeValid) {
+            String[] positions = range.substring("bytes=".length()).split("-", -1);
+            start = Integer.parseInt(positions[0]);
+            if (!positions[1].isEmpty()) {
+                end = Math.min(end, Integer.parseInt(positions[1]));
+            }
+            if (start >= body.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            responseCode = 206;
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + end + "/" + body.length);
+        }
+
+        int length = end - start + 1;
+        exchange.sendResponseHeaders(responseCode, length > 0 ? length : -1);
+        OutputStream outputStream = exchange.getResponseBody();
+        int sendingCount = mSendingCount.incrementAndGet();
+        updateMaxSendingCount(sendingCount);
+        long bytesPerSecond = mBytesPerSecond;
+        try {
+            int sent = 0;
+            while (sent < length) {
+                if (fault != null && sent >= fault.mAfterBytes) {
+                    outputStream.flush();
+                    if (!applyFault(fault)) {
+                        // Reset: leave the response short, closing the connection
+                        return;
+                    }
+                    fault = null;
+                }
+                int count = Math.min(CHUNK_SIZE, length - sent);
+                if (fault != null) {
+                    count = (int) Math.min(count, fault.mAfterBytes - sent);
+                }
+                outputStream.write(body, start + sent, count);
+                sent += count;
+                if (bytesPerSecond > 0) {
+                    outputStream.flush();
+                    Thread.sleep(count * 1000L / bytesPerSecond);
+                }
+            }
+        } catch (IOException e) {
+            // Client has gone away
+        } catch (InterruptedException e) {
+            // Server is stopping
+        } finally {
+            mSendingCount.decrementAndGet();
+        }
+    }
+
+    private void updateMaxSendingCount(int sendingCount) {
+        int max;
+        while ((max = mMaxSendingCount.get()) < sendingCount
+                && !mMaxSendingCount.compareAndSet(max, sendingCount)) { }
+    }
+
+    /**
+     * @return true if the response should continue
+     */
+    private static boolean applyFault(Fault fault) {
+        if (fault.mStallMillis > 0) {
+            try {
+                Thread.sleep(fault.mStallMillis);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return true;
+        }
+        if (fault.mReleased != null) {
+            fault.mHeld.countDown();
+            try {
+                fault.mReleased.await(HOLD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+        }
+        return false;
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (inputStream.read(buffer) != -1) { }
+    }
+}
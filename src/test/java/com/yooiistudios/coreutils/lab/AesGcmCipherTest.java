@@ -0,0 +1,194 @@
+package com.yooiistudios.coreutils.lab;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.AEADBadTagException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs on the JDK's default AES/GCM provider.
+ */
+public class AesGcmCipherTest {
+    private static final byte[] SALT = "AesGcmCipherSalt".getBytes();
+
+    private final AesGcmCipher mCipher = new AesGcmCipher("AesGcmCipherKey".getBytes());
+
+    @Test
+    public void byteArrayRoundTrip() throws Exception {
+        for (int length : new int[] { 0, 1, 15, 16, 17, 4096 }) {
+            byte[] plain = createPlain(length);
+            byte[] encrypted = mCipher.encrypt(plain);
+            assertEquals(AesGcmCipher.getEncryptedLength(length), encrypted.length);
+            assertArrayEquals(plain, mCipher.decrypt(encrypted));
+        }
+    }
+
+    @Test
+    public void encryptionUsesFreshIv() throws Exception {
+        byte[] plain = createPlain(100);
+        byte[] encrypted = mCipher.encrypt(plain);
+        byte[] otherEncrypted = mCipher.encrypt(plain);
+        assertFalse(Arrays.equals(Arrays.copyOf(encrypted, AesGcmCipher.IV_LENGTH),
+                Arrays.copyOf(otherEncrypted, AesGcmCipher.IV_LENGTH)));
+        assertFalse(Arrays.equals(encrypted, otherEncrypted));
+    }
+
+    @Test
+    public void heapByteBufferRoundTrip() throws Exception {
+        assertByteBufferRoundTrip(false);
+    }
+
+    @Test
+    public void directByteBufferRoundTrip() throws Exception {
+        assertByteBufferRoundTrip(true);
+    }
+
+    @Test
+    public void byteBufferAndByteArrayFormatsMatch() throws Exception {
+        byte[] plain = createPlain(1000);
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(AesGcmCipher.getEncryptedLength(plain.length));
+        mCipher.encrypt(ByteBuffer.wrap(plain), encrypted);
+        encrypted.flip();
+        byte[] encryptedBytes = new byte[encrypted.remaining()];
+        encrypted.get(encryptedBytes);
+        assertArrayEquals(plain, mCipher.decrypt(encryptedBytes));
+    }
+
+    @Test
+    public void flippedCiphertextBitFails() throws Exception {
+        byte[] encrypted = mCipher.encrypt(createPlain(100));
+        encrypted[AesGcmCipher.IV_LENGTH + 50] ^= 1;
+        assertBadTag(mCipher, encrypted);
+    }
+
+    @Test
+    public void flippedTagBitFails() throws Exception {
+        byte[] encrypted = mCipher.encrypt(createPlain(100));
+        encrypted[encrypted.length - 1] ^= 0x80;
+        assertBadTag(mCipher, encrypted);
+    }
+
+    @Test
+    public void flippedIvBitFails() throws Exception {
+        byte[] encrypted = mCipher.encrypt(createPlain(100));
+        encrypted[0] ^= 1;
+        assertBadTag(mCipher, encrypted);
+    }
+
+    @Test
+    public void wrongKeyFails() throws Exception {
+        byte[] encrypted = mCipher.encrypt(createPlain(100));
+        assertBadTag(new AesGcmCipher("OtherCipherKey!!".getBytes()), encrypted);
+    }
+
+    @Test
+    public void tooShortInputFails() throws Exception {
+        byte[] encrypted = new byte[AesGcmCipher.IV_LENGTH + AesGcmCipher.TAG_LENGTH - 1];
+        try {
+            mCipher.decrypt(encrypted);
+            fail();
+        } catch (GeneralSecurityException e) {
+            assertFalse(e instanceof AEADBadTagException);
+        }
+        try {
+            mCipher.decrypt(ByteBuffer.wrap(encrypted), ByteBuffer.allocate(100));
+            fail();
+        } catch (GeneralSecurityException e) {
+            assertFalse(e instanceof AEADBadTagException);
+        }
+    }
+
+    /**
+     * Every thread uses a Cipher of its own, so concurrent calls do not corrupt each other.
+     */
+    @Test
+    public void concurrentEncryptAndDecrypt() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int seed = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Random random = new Random(seed);
+                        for (int j = 0; j < 500; j++) {
+                            byte[] plain = new byte[random.nextInt(2048)];
+                            random.nextBytes(plain);
+                            assertArrayEquals(plain, mCipher.decrypt(mCipher.encrypt(plain)));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void passwordDerivesSameKeyForSameSalt() throws Exception {
+        char[] password = "password".toCharArray();
+        AesGcmCipher cipher = AesGcmCipher.fromPassword(password, SALT, 1000);
+        AesGcmCipher sameCipher = AesGcmCipher.fromPassword(password, SALT, 1000);
+        byte[] plain = createPlain(100);
+        assertArrayEquals(plain, sameCipher.decrypt(cipher.encrypt(plain)));
+
+        AesGcmCipher otherSaltCipher = AesGcmCipher.fromPassword(password,
+                "OtherSalt".getBytes(), 1000);
+        assertBadTag(otherSaltCipher, cipher.encrypt(plain));
+    }
+
+    private void assertByteBufferRoundTrip(boolean direct) throws Exception {
+        byte[] plain = createPlain(5000);
+        ByteBuffer input = allocate(plain.length, direct);
+        input.put(plain).flip();
+        ByteBuffer encrypted = allocate(AesGcmCipher.getEncryptedLength(plain.length), direct);
+        assertEquals(encrypted.capacity(), mCipher.encrypt(input, encrypted));
+        assertEquals(0, input.remaining());
+
+        encrypted.flip();
+        ByteBuffer decrypted = allocate(plain.length, direct);
+        assertEquals(plain.length, mCipher.decrypt(encrypted, decrypted));
+        decrypted.flip();
+        byte[] decryptedBytes = new byte[decrypted.remaining()];
+        decrypted.get(decryptedBytes);
+        assertArrayEquals(plain, decryptedBytes);
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static void assertBadTag(AesGcmCipher cipher, byte[] encrypted) throws Exception {
+        try {
+            cipher.decrypt(encrypted);
+            fail();
+        } catch (AEADBadTagException expected) {
+        }
+    }
+
+    private static byte[] createPlain(int length) {
+        byte[] plain = new byte[length];
+        new Random(length).nextBytes(plain);
+        return plain;
+    }
+}
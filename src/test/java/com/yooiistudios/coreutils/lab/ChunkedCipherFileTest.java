@@ -0,0 +1,206 @@
+package com.yooiistudios.coreutils.lab;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChunkedCipherFileTest {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int CHUNK_COUNT = 11;
+    private static final int PLAIN_LENGTH = CHUNK_SIZE * (CHUNK_COUNT - 1) + 100;
+    private static final int ENCRYPTED_CHUNK_SIZE = CHUNK_SIZE + AesGcmCipher.TAG_LENGTH;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private final AesGcmCipher mCipher = new AesGcmCipher("ChunkedCipherKey".getBytes());
+    private byte[] mPlain;
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mPlain = new byte[PLAIN_LENGTH];
+        new Random(23).nextBytes(mPlain);
+        mFile = mTemporaryFolder.newFile("encrypted.bin");
+        ChunkedCipherOutputStream outputStream = new ChunkedCipherOutputStream(
+                new FileOutputStream(mFile), mCipher, CHUNK_SIZE);
+        outputStream.write(mPlain);
+        outputStream.close();
+    }
+
+    @Test
+    public void layoutMatchesChunkCount() throws Exception {
+        assertEquals(ChunkedCipherFile.HEADER_LENGTH + PLAIN_LENGTH
+                + CHUNK_COUNT * AesGcmCipher.TAG_LENGTH, mFile.length());
+
+        ChunkedCipherFile file = new ChunkedCipherFile(mFile, mCipher);
+        try {
+            assertEquals(CHUNK_SIZE, file.getChunkSize());
+            assertEquals(CHUNK_COUNT, file.getChunkCount());
+            assertEquals(PLAIN_LENGTH, file.getPlainLength());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Every other chunk is overwritten with garbage, so the middle chunk can only be decrypted
+     * from its own bytes and the header.
+     */
+    @Test
+    public void middleChunkIsDecryptedOnItsOwn() throws Exception {
+        int middle = CHUNK_COUNT / 2;
+        byte[] garbage = new byte[ENCRYPTED_CHUNK_SIZE];
+        new Random(1).nextBytes(garbage);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "rw");
+        try {
+            for (int i = 0; i < CHUNK_COUNT - 1; i++) {
+                if (i != middle) {
+                    randomAccessFile.seek(getChunkPosition(i));
+                    randomAccessFile.write(garbage);
+                }
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+
+        ChunkedCipherFile file = new ChunkedCipherFile(mFile, mCipher);
+        try {
+            assertArrayEquals(Arrays.copyOfRange(mPlain, middle * CHUNK_SIZE,
+                    (middle + 1) * CHUNK_SIZE), file.readChunk(middle));
+            assertChunkCorrupted(file, middle - 1);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void lastChunkMayBeShort() throws Exception {
+        ChunkedCipherFile file = new ChunkedCipherFile(mFile, mCipher);
+        try {
+            assertArrayEquals(Arrays.copyOfRange(mPlain, (CHUNK_COUNT - 1) * CHUNK_SIZE,
+                    PLAIN_LENGTH), file.readChunk(CHUNK_COUNT - 1));
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void tamperedChunkIsRejected() throws Exception {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "rw");
+        try {
+            long position = getChunkPosition(3) + 10;
+            randomAccessFile.seek(position);
+            int value = randomAccessFile.read();
+            randomAccessFile.seek(position);
+            randomAccessFile.write(value ^ 1);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        ChunkedCipherFile file = new ChunkedCipherFile(mFile, mCipher);
+        try {
+            assertChunkCorrupted(file, 3);
+            file.readChunk(4);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void swappedChunksAreRejected() throws Exception {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "rw");
+        try {
+            byte[] chunk2 = new byte[ENCRYPTED_CHUNK_SIZE];
+            byte[] chunk3 = new byte[ENCRYPTED_CHUNK_SIZE];
+            randomAccessFile.seek(getChunkPosition(2));
+            randomAccessFile.readFully(chunk2);
+            randomAccessFile.readFully(chunk3);
+            randomAccessFile.seek(getChunkPosition(2));
+            randomAccessFile.write(chunk3);
+            randomAccessFile.write(chunk2);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        ChunkedCipherFile file = new ChunkedCipherFile(mFile, mCipher);
+        try {
+            assertChunkCorrupted(file, 2);
+            assertChunkCorrupted(file, 3);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void droppedLastChunkIsDetected() throws Exception {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "rw");
+        try {
+            randomAccessFile.setLength(getChunkPosition(CHUNK_COUNT - 1));
+        } finally {
+            randomAccessFile.close();
+        }
+
+        ChunkedCipherFile file = new ChunkedCipherFile(mFile, mCipher);
+        try {
+            assertEquals(CHUNK_COUNT - 1, file.getChunkCount());
+            // Not encrypted as the final chunk
+            assertChunkCorrupted(file, CHUNK_COUNT - 2);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void wrongKeyIsRejected() throws Exception {
+        ChunkedCipherFile file = new ChunkedCipherFile(mFile, new AesGcmCipher("other".getBytes()));
+        try {
+            assertChunkCorrupted(file, 0);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void inputStreamReadsEveryChunk() throws Exception {
+        ChunkedCipherInputStream inputStream = new ChunkedCipherInputStream(
+                new FileInputStream(mFile), mCipher);
+        byte[] read = new byte[PLAIN_LENGTH + 1];
+        int length = 0;
+        try {
+            int bytesRead;
+            while ((bytesRead = inputStream.read(read, length, read.length - length)) != -1) {
+                length += bytesRead;
+            }
+        } finally {
+            inputStream.close();
+        }
+        assertEquals(PLAIN_LENGTH, length);
+        assertArrayEquals(mPlain, Arrays.copyOf(read, length));
+    }
+
+    private static long getChunkPosition(int index) {
+        return ChunkedCipherFile.HEADER_LENGTH + (long) index * ENCRYPTED_CHUNK_SIZE;
+    }
+
+    private static void assertChunkCorrupted(ChunkedCipherFile file, long index) {
+        try {
+            file.readChunk(index);
+            fail("Chunk " + index + " has been decrypted");
+        } catch (IOException expected) {
+        }
+    }
+}
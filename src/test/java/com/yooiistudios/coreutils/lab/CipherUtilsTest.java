@@ -0,0 +1,141 @@
+package com.yooiistudios.coreutils.lab;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CipherUtilsTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int ROUND_COUNT = 1000;
+
+    @Test
+    public void randomUnicodeSurvivesRoundTrip() {
+        Random random = new Random(21);
+        for (int i = 0; i < ROUND_COUNT; i++) {
+            String key = createString(random, 1 + random.nextInt(32));
+            String data = createString(random, random.nextInt(64));
+
+            byte[] encrypted = parseArrayRepresentation(
+                    CipherUtils.dataToBytesRepresentation(key, data));
+            assertEquals(data.getBytes(UTF_8).length, encrypted.length);
+            assertEquals("key: " + key, data, CipherUtils.bytesToData(key, encrypted));
+        }
+    }
+
+    @Test
+    public void unswapRevertsSwapForAnyBytes() {
+        Random random = new Random(7);
+        for (int i = 0; i < ROUND_COUNT; i++) {
+            byte[] key = new byte[random.nextInt(32)];
+            byte[] data = new byte[random.nextInt(300)];
+            random.nextBytes(key);
+            random.nextBytes(data);
+            byte[] original = data.clone();
+
+            CipherUtils.unswap(key, CipherUtils.swap(key, data));
+            assertArrayEquals(original, data);
+        }
+    }
+
+    @Test
+    public void asciiOutputIsSameAsBefore() {
+        Random random = new Random(3);
+        for (int i = 0; i < ROUND_COUNT; i++) {
+            String key = createAsciiString(random, 1 + random.nextInt(32));
+            String data = createAsciiString(random, 2 + random.nextInt(64));
+
+            byte[] encrypted = parseArrayRepresentation(
+                    CipherUtils.dataToBytesRepresentation(key, data));
+            assertArrayEquals(swapLikeBefore(key.getBytes(UTF_8), data), encrypted);
+        }
+    }
+
+    @Test
+    public void cachedPermutationGivesSameOutput() {
+        Random random = new Random(11);
+        byte[] key = "CachedKey".getBytes(UTF_8);
+        for (int i = 0; i < ROUND_COUNT; i++) {
+            String data = createAsciiString(random, 2 + random.nextInt(16));
+            byte[] expected = swapLikeBefore(key, data);
+            byte[] bytes = data.getBytes(UTF_8);
+
+            assertArrayEquals(expected, CipherUtils.swap(key, bytes));
+            assertEquals(data, new String(CipherUtils.unswap(key, bytes), UTF_8));
+        }
+    }
+
+    @Test
+    public void bytesToDataLeavesInputUntouched() {
+        byte[] encrypted = parseArrayRepresentation(
+                CipherUtils.dataToBytesRepresentation("key", "www.google.com"));
+        byte[] copy = encrypted.clone();
+        assertEquals("www.google.com", CipherUtils.bytesToData("key", encrypted));
+        assertArrayEquals(copy, encrypted);
+    }
+
+    /**
+     * Swap of the String based implementation, which is correct for ASCII only.
+     */
+    private static byte[] swapLikeBefore(byte[] keyBytes, String data) {
+        byte[] bytes = data.getBytes(UTF_8);
+        for (int i = 0; i < 5; i++) {
+            for (byte keyByte : keyBytes) {
+                int index = (keyByte & 0xff) % data.length();
+                byte temp = bytes[0];
+                bytes[0] = bytes[index];
+                bytes[index] = temp;
+            }
+        }
+        return bytes;
+    }
+
+    private static byte[] parseArrayRepresentation(String representation) {
+        String values = representation.replace("{", "").replace("}", "").trim();
+        if (values.isEmpty()) {
+            return new byte[0];
+        }
+        String[] tokens = values.split(",");
+        byte[] bytes = new byte[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            bytes[i] = Byte.parseByte(tokens[i].trim());
+        }
+        return bytes;
+    }
+
+    private static String createString(Random random, int codePointCount) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.codePointCount(0, sb.length()) < codePointCount) {
+            int codePoint;
+            switch (random.nextInt(4)) {
+                case 0:
+                    codePoint = random.nextInt(0x80);
+                    break;
+                case 1:
+                    // Hangul syllables
+                    codePoint = 0xAC00 + random.nextInt(0x2BA4);
+                    break;
+                case 2:
+                    // Supplementary planes, e.g. emoji
+                    codePoint = 0x10000 + random.nextInt(0x100000);
+                    break;
+                default:
+                    codePoint = random.nextInt(0xD800);
+                    break;
+            }
+            sb.appendCodePoint(codePoint);
+        }
+        return sb.toString();
+    }
+
+    private static String createAsciiString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (0x20 + random.nextInt(0x5F));
+        }
+        return new String(chars);
+    }
+}